@@ -0,0 +1,68 @@
+package benchmarks;
+
+/**
+ * A piece of code whose running time (and allocation) is measured by a
+ * BenchmarkRunner.
+ *
+ * The runner calls setUp before every iteration, which is not measured, and
+ * then run, which performs the given number of operations.
+ */
+public abstract class Benchmark {
+
+	private final String name;
+	private final String parameters;
+
+	protected Benchmark(String name, String parameters) {
+		this.name = name;
+		this.parameters = parameters;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Description of the parameters of this benchmark, e.g. "radius=0.25"
+	 */
+	public String getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * The maximal number of operations in a single iteration, e.g. because
+	 * the state that setUp prepares only lasts for so many operations
+	 */
+	public int getMaxOpsPerIteration() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Prepare for an iteration of the given number of operations
+	 */
+	protected void setUp(int nbOps) {
+	}
+
+	/**
+	 * Perform the given number of operations
+	 */
+	protected abstract void run(int nbOps);
+
+	// results are stored here, so the JIT cannot drop the computation
+	private static volatile double sink;
+
+	/**
+	 * Make sure the given value is computed
+	 */
+	protected static void consume(double value) {
+		sink += value;
+	}
+
+	/**
+	 * Make sure the given object is computed
+	 */
+	protected static void consume(Object value) {
+		if (value == null) {
+			sink += 1;
+		}
+	}
+}
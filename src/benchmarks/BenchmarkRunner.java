@@ -0,0 +1,162 @@
+package benchmarks;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs benchmarks in warm-up and measurement iterations, and reports the time
+ * (ns/op) and the number of bytes allocated (B/op) per operation.
+ *
+ * Results are printed as tab-separated lines, one per benchmark, in the order
+ * in which they were added, so that the results of two builds can be
+ * compared with diff:
+ *
+ * <pre>
+ * benchmark	parameters	ns/op	error	B/op
+ * </pre>
+ *
+ * The error is the standard deviation of ns/op over the measurement
+ * iterations.
+ */
+public class BenchmarkRunner {
+
+	private final List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+	private int warmupIterations = 5;
+	private int measurementIterations = 10;
+	private int opsPerIteration = 10000;
+
+	private final com.sun.management.ThreadMXBean threads = getThreadBean();
+
+	public void add(Benchmark benchmark) {
+		benchmarks.add(benchmark);
+	}
+
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+
+	public void setMeasurementIterations(int measurementIterations) {
+		this.measurementIterations = measurementIterations;
+	}
+
+	public void setOpsPerIteration(int opsPerIteration) {
+		this.opsPerIteration = opsPerIteration;
+	}
+
+	/**
+	 * Set the options of this runner from the given command line arguments
+	 * (-warmup, -iterations and -ops), and return the name of the file to
+	 * which to write the results (-out), or null if there is none
+	 */
+	public String parseOptions(String[] args) {
+		String out = null;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if ("-warmup".equals(arg)) {
+				setWarmupIterations(Integer.parseInt(args[++i]));
+			} else if ("-iterations".equals(arg)) {
+				setMeasurementIterations(Integer.parseInt(args[++i]));
+			} else if ("-ops".equals(arg)) {
+				setOpsPerIteration(Integer.parseInt(args[++i]));
+			} else if ("-out".equals(arg)) {
+				out = args[++i];
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Run all benchmarks, print their results to standard output, and to the
+	 * file with the given name if it is not null
+	 */
+	public void runAll(String out) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		lines.add("# benchmark\tparameters\tns/op\terror\tB/op");
+		System.out.println(lines.get(0));
+		for (Benchmark benchmark : benchmarks) {
+			String line = run(benchmark);
+			lines.add(line);
+			System.out.println(line);
+		}
+		if (out != null) {
+			PrintWriter writer = new PrintWriter(new FileWriter(out));
+			try {
+				for (String line : lines) {
+					writer.println(line);
+				}
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	private String run(Benchmark benchmark) {
+		int opsPerIteration = Math.min(this.opsPerIteration,
+				benchmark.getMaxOpsPerIteration());
+		for (int i = 0; i < warmupIterations; i++) {
+			benchmark.setUp(opsPerIteration);
+			benchmark.run(opsPerIteration);
+		}
+
+		double[] nsPerOp = new double[measurementIterations];
+		double bytesPerOp = 0;
+		for (int i = 0; i < measurementIterations; i++) {
+			benchmark.setUp(opsPerIteration);
+			long allocatedBefore = getAllocatedBytes();
+			long start = System.nanoTime();
+			benchmark.run(opsPerIteration);
+			long end = System.nanoTime();
+			long allocated = getAllocatedBytes() - allocatedBefore;
+			nsPerOp[i] = (double) (end - start) / opsPerIteration;
+			bytesPerOp += (double) allocated / opsPerIteration;
+		}
+		bytesPerOp /= measurementIterations;
+
+		double mean = 0;
+		for (double value : nsPerOp) {
+			mean += value;
+		}
+		mean /= nsPerOp.length;
+		double variance = 0;
+		for (double value : nsPerOp) {
+			variance += (value - mean) * (value - mean);
+		}
+		double error = Math.sqrt(variance / nsPerOp.length);
+
+		return String.format(Locale.ROOT, "%s\t%s\t%.3f\t%.3f\t%.1f",
+				benchmark.getName(), benchmark.getParameters(), mean, error,
+				threads == null ? Double.NaN : bytesPerOp);
+	}
+
+	/**
+	 * Number of bytes allocated by the current thread so far, or 0 if the
+	 * virtual machine cannot tell
+	 */
+	private long getAllocatedBytes() {
+		if (threads == null) {
+			return 0;
+		}
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory
+				.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean result = (com.sun.management.ThreadMXBean) bean;
+			if (result.isThreadAllocatedMemorySupported()) {
+				result.setThreadAllocatedMemoryEnabled(true);
+				return result;
+			}
+		}
+		return null;
+	}
+}
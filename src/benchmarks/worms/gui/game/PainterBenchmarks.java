@@ -0,0 +1,134 @@
+package benchmarks.worms.gui.game;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import benchmarks.Benchmark;
+import benchmarks.BenchmarkRunner;
+import worms.gui.GUIConstants;
+import worms.gui.GUIOptions;
+import worms.gui.GameState;
+import worms.gui.WormsGUI;
+import worms.gui.game.PlayGameScreen;
+import worms.gui.game.commands.Jump;
+import worms.model.Facade;
+import worms.model.Worm;
+
+/**
+ * Benchmarks for painting the play screen into an offscreen image, with the
+ * normal and the debug painter, for several numbers of worms, with and
+ * without a selected worm, and with a number of worms in the middle of a
+ * jump. Every operation paints one frame.
+ *
+ * This runs headless (-Djava.awt.headless=true); no window is opened.
+ *
+ * Usage:
+ *
+ * <pre>
+ * java benchmarks.worms.gui.game.PainterBenchmarks [-warmup &lt;n&gt;]
+ *     [-iterations &lt;n&gt;] [-ops &lt;n&gt;] [-out &lt;file&gt;]
+ * </pre>
+ */
+public class PainterBenchmarks {
+
+	private static final int WIDTH = GUIConstants.DEFAULT_WINDOW_WIDTH;
+	private static final int HEIGHT = GUIConstants.DEFAULT_WINDOW_HEIGHT;
+
+	private static final int[] NB_WORMS = { 10, 100, 1000 };
+	private static final int[] NB_JUMPS = { 0, 10 };
+
+	/**
+	 * Paints frames of a play screen that is set up once
+	 */
+	private static class PaintBenchmark extends Benchmark {
+		private final boolean debug;
+		private final int nbWorms;
+		private final boolean selection;
+		private final int nbJumps;
+
+		private PlayGameScreen screen;
+		private BufferedImage image;
+
+		public PaintBenchmark(boolean debug, int nbWorms, boolean selection,
+				int nbJumps) {
+			super(debug ? "PlayGameScreenDebugPainter.paint"
+					: "PlayGameScreenPainter.paint", "worms=" + nbWorms
+					+ ",selection=" + selection + ",jumps=" + nbJumps);
+			this.debug = debug;
+			this.nbWorms = nbWorms;
+			this.selection = selection;
+			this.nbJumps = nbJumps;
+		}
+
+		@Override
+		protected void setUp(int nbOps) {
+			if (screen == null) {
+				screen = createScreen();
+				image = new BufferedImage(WIDTH, HEIGHT,
+						BufferedImage.TYPE_INT_RGB);
+			}
+		}
+
+		private PlayGameScreen createScreen() {
+			Facade facade = new Facade();
+			WormsGUI gui = new WormsGUI(facade, new GUIOptions());
+			GameState state = new GameState(facade, nbWorms, WIDTH, HEIGHT);
+			state.startGame(nbWorms);
+			PlayGameScreen screen = PlayGameScreen.create(gui, state, debug);
+			screen.getPanel().setSize(WIDTH, HEIGHT);
+			screen.startOffscreen();
+
+			List<Worm> worms = new ArrayList<Worm>(state.getWorms());
+			state.selectWorm(selection ? worms.get(0) : null);
+			// halfway through a jump, without landing
+			for (int i = 0; i < nbJumps && i < worms.size(); i++) {
+				Worm worm = worms.get(worms.size() - 1 - i);
+				if (facade.canJump(worm)) {
+					Jump jump = new Jump(facade, worm, screen);
+					jump.startExecution();
+					jump.update(facade.getJumpTime(worm) / 2);
+				}
+			}
+			screen.publishSnapshot();
+			return screen;
+		}
+
+		@Override
+		protected void run(int nbOps) {
+			for (int i = 0; i < nbOps; i++) {
+				Graphics2D g = image.createGraphics();
+				try {
+					g.setColor(Color.BLACK);
+					g.fillRect(0, 0, WIDTH, HEIGHT);
+					screen.renderFrame(g);
+				} finally {
+					g.dispose();
+				}
+			}
+			consume(image.getRGB(WIDTH / 2, HEIGHT / 2));
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		runner.setOpsPerIteration(100);
+		String out = runner.parseOptions(args);
+
+		for (boolean debug : new boolean[] { false, true }) {
+			for (int nbWorms : NB_WORMS) {
+				for (boolean selection : new boolean[] { false, true }) {
+					for (int nbJumps : NB_JUMPS) {
+						runner.add(new PaintBenchmark(debug, nbWorms,
+								selection, nbJumps));
+					}
+				}
+			}
+		}
+
+		runner.runAll(out);
+	}
+}
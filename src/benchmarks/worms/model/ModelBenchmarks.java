@@ -0,0 +1,251 @@
+package benchmarks.worms.model;
+
+import java.io.IOException;
+import java.util.Random;
+
+import benchmarks.Benchmark;
+import benchmarks.BenchmarkRunner;
+import worms.model.Facade;
+import worms.model.IFacade;
+import worms.model.Worm;
+import worms.model.WormPopulation;
+
+/**
+ * Benchmarks for the operations of worms, directly and through the facade,
+ * for representative radii and directions.
+ *
+ * Usage:
+ *
+ * <pre>
+ * java benchmarks.worms.model.ModelBenchmarks [-warmup &lt;n&gt;]
+ *     [-iterations &lt;n&gt;] [-ops &lt;n&gt;] [-out &lt;file&gt;]
+ * </pre>
+ */
+public class ModelBenchmarks {
+
+	private static final double[] RADII = { 0.25, 1.0, 10.0 };
+	private static final double[] DIRECTIONS = { 0.3, 1.2, 2.8 };
+	private static final int[] POPULATION_SIZES = { 100, 10000 };
+
+	/**
+	 * A benchmark that performs every operation on a fresh worm, for
+	 * operations that use up action points
+	 */
+	private static abstract class WormPoolBenchmark extends Benchmark {
+		private final double radius;
+		private final double direction;
+		protected Worm[] worms;
+
+		protected WormPoolBenchmark(String name, double radius,
+				double direction) {
+			super(name, "radius=" + radius + ",direction=" + direction);
+			this.radius = radius;
+			this.direction = direction;
+		}
+
+		@Override
+		protected void setUp(int nbOps) {
+			WormPopulation population = new WormPopulation(nbOps);
+			worms = new Worm[nbOps];
+			for (int i = 0; i < nbOps; i++) {
+				worms[i] = population.createWorm(0, 0, direction, radius,
+						"Benchmark");
+			}
+		}
+	}
+
+	/**
+	 * A benchmark that performs every operation on a fresh worm of a facade
+	 */
+	private static abstract class FacadeBenchmark extends Benchmark {
+		private final double radius;
+		private final double direction;
+		protected IFacade facade;
+		protected Worm[] worms;
+
+		protected FacadeBenchmark(String name, double radius, double direction) {
+			super(name, "radius=" + radius + ",direction=" + direction);
+			this.radius = radius;
+			this.direction = direction;
+		}
+
+		@Override
+		protected void setUp(int nbOps) {
+			facade = new Facade();
+			worms = new Worm[nbOps];
+			for (int i = 0; i < nbOps; i++) {
+				worms[i] = facade.createWorm(i, 0, direction, radius,
+						"Benchmark");
+			}
+		}
+	}
+
+	private static void addWormBenchmarks(BenchmarkRunner runner,
+			final double radius, final double direction) {
+		runner.add(new WormPoolBenchmark("Worm.move", radius, direction) {
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					if (worms[i].isValidStep(1)) {
+						worms[i].move(1);
+					}
+				}
+			}
+		});
+		runner.add(new WormPoolBenchmark("Worm.turn", radius, direction) {
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					if (worms[i].isValidTurn(Math.PI / 4)) {
+						worms[i].turn(Math.PI / 4);
+					}
+				}
+			}
+		});
+		runner.add(new WormPoolBenchmark("Worm.jump", radius, direction) {
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					worms[i].jump();
+				}
+			}
+		});
+
+		final Worm worm = new Worm(0, 0, direction, radius, "Benchmark");
+		final double duration = worm.jumpTime();
+		runner.add(new Benchmark("Worm.jumpTime", "radius=" + radius
+				+ ",direction=" + direction) {
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					consume(worm.jumpTime());
+				}
+			}
+		});
+		runner.add(new Benchmark("Worm.jumpStep", "radius=" + radius
+				+ ",direction=" + direction) {
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					consume(worm.jumpStep(duration * i / nbOps)[1]);
+				}
+			}
+		});
+	}
+
+	private static void addFacadeBenchmarks(BenchmarkRunner runner,
+			double radius, double direction) {
+		runner.add(new FacadeBenchmark("Facade.move", radius, direction) {
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					if (facade.canMove(worms[i], 1)) {
+						facade.move(worms[i], 1);
+					}
+				}
+			}
+		});
+		runner.add(new FacadeBenchmark("Facade.turn", radius, direction) {
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					if (facade.canTurn(worms[i], Math.PI / 4)) {
+						facade.turn(worms[i], Math.PI / 4);
+					}
+				}
+			}
+		});
+		runner.add(new FacadeBenchmark("Facade.jump", radius, direction) {
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					facade.jump(worms[i]);
+				}
+			}
+		});
+		runner.add(new FacadeBenchmark("Facade.getJumpTime", radius,
+				direction) {
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					consume(facade.getJumpTime(worms[i]));
+				}
+			}
+		});
+	}
+
+	private static void addNameBenchmarks(BenchmarkRunner runner) {
+		String[] names = { "James o'Hara", "Bo", "james", "James007",
+				"A very \"long\" name for a worm to check" };
+		for (final String name : names) {
+			runner.add(new Benchmark("Worm.isValidName", "name=" + name) {
+				@Override
+				protected void run(int nbOps) {
+					for (int i = 0; i < nbOps; i++) {
+						consume(Worm.isValidName(name) ? 1 : 0);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Every operation moves all worms of a population one step
+	 */
+	private static void addPopulationBenchmark(BenchmarkRunner runner,
+			final int size) {
+		runner.add(new Benchmark("Facade.moveAll", "worms=" + size) {
+			private Facade facade;
+			private Worm[] worms;
+			private int[] steps;
+
+			@Override
+			public int getMaxOpsPerIteration() {
+				// worms with radius 1 have enough action points for this
+				return 500;
+			}
+
+			@Override
+			protected void setUp(int nbOps) {
+				Random random = new Random(size);
+				facade = new Facade(new WormPopulation(size));
+				worms = new Worm[size];
+				steps = new int[size];
+				for (int i = 0; i < size; i++) {
+					worms[i] = facade.createWorm(i, 0, random.nextDouble()
+							* Math.PI, 1.0, "Benchmark");
+					steps[i] = 1;
+				}
+			}
+
+			@Override
+			protected void run(int nbOps) {
+				for (int i = 0; i < nbOps; i++) {
+					consume(facade.moveAll(worms, steps).cardinality());
+				}
+			}
+		});
+	}
+
+	public static void main(String[] args) throws IOException {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		String out = runner.parseOptions(args);
+
+		for (double radius : RADII) {
+			for (double direction : DIRECTIONS) {
+				addWormBenchmarks(runner, radius, direction);
+			}
+		}
+		for (double radius : RADII) {
+			for (double direction : DIRECTIONS) {
+				addFacadeBenchmarks(runner, radius, direction);
+			}
+		}
+		addNameBenchmarks(runner);
+		for (int size : POPULATION_SIZES) {
+			addPopulationBenchmark(runner, size);
+		}
+
+		runner.runAll(out);
+	}
+}
@@ -0,0 +1,143 @@
+package tests.worms.gui;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import worms.gui.GameState;
+import worms.gui.GameStateFile;
+import worms.model.Facade;
+import worms.model.IFacade;
+import worms.model.Worm;
+
+/**
+ * Saves a game with GameStateFile, loads it again, and checks that broken
+ * files are refused.
+ */
+public class GameStateFileTest {
+
+	private static final int NB_WORMS = 50;
+	private static final long SEED = 7;
+	// positions of the counts in the header
+	private static final int NB_WORMS_POSITION = 4 + 2 + 8 + 4 + 4;
+	private static final int NB_NAMES_POSITION = NB_WORMS_POSITION + 4 + 4;
+
+	private File file;
+	private File copy;
+	private GameState gameState;
+
+	@Before
+	public void setup() throws IOException {
+		file = File.createTempFile("game", ".sav");
+		file.deleteOnExit();
+		copy = File.createTempFile("game", ".sav");
+		copy.deleteOnExit();
+		gameState = new GameState(new Facade(), SEED, 1024, 768);
+		gameState.startGame(NB_WORMS);
+		gameState.selectNextWorm();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+		copy.delete();
+	}
+
+	@Test
+	public void testSaveLoadSave() throws IOException {
+		GameStateFile.save(gameState, file.getPath());
+		GameState loaded = GameStateFile.load(file.getPath());
+		assertEquals(gameState.getRandomSeed(), loaded.getRandomSeed());
+		assertEquals(gameState.getWidth(), loaded.getWidth());
+		assertEquals(gameState.getHeight(), loaded.getHeight());
+		assertSameWorms(gameState, loaded);
+
+		GameStateFile.save(loaded, copy.getPath());
+		assertTrue(Arrays.equals(readAll(file), readAll(copy)));
+	}
+
+	@Test
+	public void testLoadWithFacade() throws IOException {
+		GameStateFile.save(gameState, file.getPath());
+		assertSameWorms(gameState,
+				GameStateFile.load(new Facade(), file.getPath()));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNegativeNbNames() throws IOException {
+		GameStateFile.save(gameState, file.getPath());
+		putInt(file, NB_NAMES_POSITION, -1);
+		GameStateFile.load(file.getPath());
+	}
+
+	@Test(expected = IOException.class)
+	public void testNegativeNbWorms() throws IOException {
+		GameStateFile.save(gameState, file.getPath());
+		putInt(file, NB_WORMS_POSITION, -1);
+		GameStateFile.load(file.getPath());
+	}
+
+	@Test(expected = IOException.class)
+	public void testTooManyWorms() throws IOException {
+		GameStateFile.save(gameState, file.getPath());
+		putInt(file, NB_WORMS_POSITION, Integer.MAX_VALUE);
+		GameStateFile.load(file.getPath());
+	}
+
+	private static void assertSameWorms(GameState expectedState,
+			GameState actualState) {
+		IFacade expectedFacade = expectedState.getFacade();
+		IFacade actualFacade = actualState.getFacade();
+		List<Worm> expectedWorms = new ArrayList<Worm>(expectedState.getWorms());
+		List<Worm> actualWorms = new ArrayList<Worm>(actualState.getWorms());
+		assertEquals(expectedWorms.size(), actualWorms.size());
+		for (int i = 0; i < expectedWorms.size(); i++) {
+			Worm expected = expectedWorms.get(i);
+			Worm actual = actualWorms.get(i);
+			assertEquals(expectedFacade.getName(expected),
+					actualFacade.getName(actual));
+			assertEquals(expectedFacade.getX(expected),
+					actualFacade.getX(actual), 0);
+			assertEquals(expectedFacade.getY(expected),
+					actualFacade.getY(actual), 0);
+			assertEquals(expectedFacade.getOrientation(expected),
+					actualFacade.getOrientation(actual), 0);
+			assertEquals(expectedFacade.getRadius(expected),
+					actualFacade.getRadius(actual), 0);
+			assertEquals(expectedFacade.getActionPoints(expected),
+					actualFacade.getActionPoints(actual));
+		}
+		assertEquals(expectedWorms.indexOf(expectedState.getSelectedWorm()),
+				actualWorms.indexOf(actualState.getSelectedWorm()));
+	}
+
+	private static byte[] readAll(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] bytes = new byte[(int) in.length()];
+			in.readFully(bytes);
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void putInt(File file, int position, int value)
+			throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.seek(position);
+			out.writeInt(value);
+		} finally {
+			out.close();
+		}
+	}
+}
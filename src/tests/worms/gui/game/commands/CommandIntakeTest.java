@@ -0,0 +1,205 @@
+package tests.worms.gui.game.commands;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import worms.gui.game.commands.Command;
+import worms.gui.game.commands.CommandMetrics;
+import worms.gui.game.commands.CommandProcessor;
+import worms.gui.game.commands.InstantaneousCommand;
+import worms.model.Worm;
+
+/**
+ * Submits commands to a command processor from several threads at once, and
+ * takes them in on a single thread.
+ */
+public class CommandIntakeTest {
+
+	private static final int NB_PRODUCERS = 4;
+	private static final int NB_COMMANDS_PER_PRODUCER = 20000;
+	private static final int INTAKE_CAPACITY = 16;
+
+	/**
+	 * A command that only records that it was executed
+	 */
+	private static class Numbered extends InstantaneousCommand {
+		private final int producer;
+		private final int number;
+		private final List<Numbered> executed;
+
+		private Numbered(int producer, int number, List<Numbered> executed) {
+			super(null, null);
+			this.producer = producer;
+			this.number = number;
+			this.executed = executed;
+		}
+
+		@Override
+		public Worm getWorm() {
+			return null;
+		}
+
+		@Override
+		protected boolean canExecute() {
+			return true;
+		}
+
+		@Override
+		protected void doStartExecution() {
+			executed.add(this);
+		}
+	}
+
+	/**
+	 * A command that executes until the test ends
+	 */
+	private static class Endless extends Command {
+		private Endless() {
+			super(null, null);
+		}
+
+		@Override
+		public Worm getWorm() {
+			return null;
+		}
+
+		@Override
+		protected boolean canExecute() {
+			return true;
+		}
+
+		@Override
+		protected void doStartExecution() {
+		}
+
+		@Override
+		protected boolean isDoneExecuting() {
+			return false;
+		}
+
+		@Override
+		protected void doUpdate(double dt) {
+		}
+	}
+
+	@Test
+	public void testNoCommandIsLostOrDuplicated() throws InterruptedException {
+		final CommandProcessor processor = new CommandProcessor(INTAKE_CAPACITY);
+		final List<Numbered> executed = new ArrayList<Numbered>();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] producers = new Thread[NB_PRODUCERS];
+		for (int i = 0; i < NB_PRODUCERS; i++) {
+			final int producer = i;
+			producers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int number = 0; number < NB_COMMANDS_PER_PRODUCER; number++) {
+						Numbered cmd = new Numbered(producer, number, executed);
+						while (!processor.submitCommand(cmd)) {
+							Thread.yield();
+						}
+					}
+				}
+			};
+			producers[i].start();
+		}
+		start.countDown();
+
+		int total = NB_PRODUCERS * NB_COMMANDS_PER_PRODUCER;
+		long deadline = System.currentTimeMillis() + 60000;
+		while (executed.size() < total) {
+			assertTrue("timed out", System.currentTimeMillis() < deadline);
+			processor.advanceCommandQueue(0);
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		processor.advanceCommandQueue(0);
+
+		assertEquals(total, executed.size());
+		assertEquals(0, processor.getNbPendingCommands());
+		// every producer's commands are executed once each, in order
+		int[] nextNumber = new int[NB_PRODUCERS];
+		for (Numbered cmd : executed) {
+			assertEquals(nextNumber[cmd.producer], cmd.number);
+			nextNumber[cmd.producer]++;
+		}
+		for (int i = 0; i < NB_PRODUCERS; i++) {
+			assertEquals(NB_COMMANDS_PER_PRODUCER, nextNumber[i]);
+		}
+		assertEquals(total, processor.getMetrics().getNbEnqueued());
+	}
+
+	@Test
+	public void testFullIntakeRejectsCommands() throws InterruptedException {
+		final CommandProcessor processor = new CommandProcessor(INTAKE_CAPACITY);
+		final List<Numbered> executed = new ArrayList<Numbered>();
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger nbAccepted = new AtomicInteger();
+		Thread[] producers = new Thread[NB_PRODUCERS];
+		for (int i = 0; i < NB_PRODUCERS; i++) {
+			final int producer = i;
+			producers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int number = 0; number < INTAKE_CAPACITY; number++) {
+						if (processor.submitCommand(new Numbered(producer,
+								number, executed))) {
+							nbAccepted.incrementAndGet();
+						}
+					}
+				}
+			};
+			producers[i].start();
+		}
+		start.countDown();
+		for (Thread producer : producers) {
+			producer.join();
+		}
+
+		// nothing was taken in, so exactly one intake full was accepted
+		assertEquals(INTAKE_CAPACITY, nbAccepted.get());
+		assertEquals(INTAKE_CAPACITY, processor.getNbPendingCommands());
+		assertFalse(processor.submitCommand(new Numbered(0, 0, executed)));
+
+		processor.advanceCommandQueue(0);
+		assertEquals(INTAKE_CAPACITY, executed.size());
+		assertTrue(processor.submitCommand(new Numbered(0, 0, executed)));
+	}
+
+	@Test
+	public void testClearReportsDiscardedCommands() {
+		CommandProcessor processor = new CommandProcessor(INTAKE_CAPACITY);
+		List<Numbered> executed = new ArrayList<Numbered>();
+		processor.setCoalescing(false);
+		assertTrue(processor.submitCommand(new Endless()));
+		assertTrue(processor.submitCommand(new Numbered(0, 0, executed)));
+		assertTrue(processor.submitCommand(new Numbered(0, 1, executed)));
+		processor.advanceCommandQueue(0);
+		assertTrue(processor.submitCommand(new Numbered(0, 2, executed)));
+		assertEquals(4, processor.getNbPendingCommands());
+
+		processor.clear();
+		CommandMetrics metrics = processor.getMetrics();
+		assertEquals(0, processor.getNbPendingCommands());
+		assertEquals(1, metrics.getNbCancelled());
+		assertEquals(3, metrics.getNbDropped());
+		assertEquals(0, metrics.getQueueDepth());
+		assertTrue(executed.isEmpty());
+	}
+}
@@ -0,0 +1,351 @@
+package tests.worms.gui.game.commands;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import worms.gui.GUIConstants;
+import worms.gui.GameState;
+import worms.gui.GameStateFile;
+import worms.gui.JournalPlayer;
+import worms.gui.game.commands.Command;
+import worms.gui.game.commands.CommandJournal;
+import worms.gui.game.commands.JournalReader;
+import worms.gui.game.commands.Jump;
+import worms.gui.game.commands.Move;
+import worms.gui.game.commands.OverflowPolicy;
+import worms.gui.game.commands.Rename;
+import worms.gui.game.commands.Resize;
+import worms.gui.game.commands.Turn;
+import worms.model.Facade;
+import worms.model.IFacade;
+import worms.model.Worm;
+
+/**
+ * Records a game in a CommandJournal, reads the commands back, and replays
+ * them.
+ */
+public class CommandJournalTest {
+
+	private static final int NB_WORMS = 4;
+	private static final long SEED = 42;
+	// not a valid name, but it has to be recorded as it is
+	private static final String UNICODE_NAME = "Zo\u00eb \u00dcnal \u2603 \ud83d\udc1b";
+
+	private File file;
+	private GameState gameState;
+	private List<Worm> worms;
+	private CommandJournal journal;
+	// the commands in the order in which they were enqueued (see describe),
+	// and the step before which they were enqueued
+	private final List<String> commands = new ArrayList<String>();
+	private final List<Long> ticks = new ArrayList<Long>();
+	private long tick = 0;
+
+	@Before
+	public void setup() throws IOException {
+		file = File.createTempFile("journal", ".bin");
+		file.deleteOnExit();
+		gameState = new GameState(new Facade(), SEED, 1024, 768);
+		gameState.startGame(NB_WORMS);
+		worms = new ArrayList<Worm>(gameState.getWorms());
+		journal = gameState.startJournal(file.getPath());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		journal.close();
+	}
+
+	private void enqueue(Command command) {
+		commands.add(describe(command));
+		assertTrue(gameState.enqueueCommand(command));
+		ticks.add(tick);
+	}
+
+	private void evolve(int nbSteps) {
+		for (int i = 0; i < nbSteps; i++) {
+			gameState.evolve(GUIConstants.TIME_STEP);
+			tick++;
+		}
+	}
+
+	/**
+	 * Enqueue commands of every type, some of them right after each other
+	 * for the same worm, and run until they have all finished
+	 */
+	private void playGame() {
+		IFacade facade = gameState.getFacade();
+		enqueue(new Move(facade, worms.get(0), 2, null));
+		enqueue(new Move(facade, worms.get(0), 1, null));
+		enqueue(new Turn(facade, worms.get(1), 0.5, null));
+		enqueue(new Turn(facade, worms.get(1), -1.25, null));
+		enqueue(new Resize(facade, worms.get(2), 1.2, null));
+		enqueue(new Rename(facade, worms.get(3), "James o'Hara", null));
+		evolve(3);
+		enqueue(new Jump(facade, worms.get(1), null));
+		enqueue(new Rename(facade, worms.get(2), UNICODE_NAME, null));
+		enqueue(new Resize(facade, worms.get(0), 0.8, null));
+		evolve(1);
+		enqueue(new Move(facade, worms.get(3), 3, null));
+		enqueue(new Jump(facade, worms.get(0), null));
+		for (int i = 0; i < 10000 && gameState.getNbPendingCommands() > 0; i++) {
+			evolve(1);
+		}
+		assertEquals(0, gameState.getNbPendingCommands());
+	}
+
+	/**
+	 * Check that the journal holds exactly the commands that were enqueued
+	 */
+	private void assertRecordsMatch(JournalReader reader) {
+		assertEquals(SEED, reader.getRandomSeed());
+		assertEquals(NB_WORMS, reader.getNbWorms());
+		IFacade facade = new Facade();
+		reader.rewind();
+		for (int i = 0; i < commands.size(); i++) {
+			assertTrue("record " + i, reader.next());
+			assertEquals((long) ticks.get(i), reader.getTick());
+			assertEquals(commands.get(i),
+					describe(reader.createCommand(facade, worms, null)));
+		}
+		assertFalse(reader.next());
+	}
+
+	/**
+	 * The type, worm and arguments of the given command, before any other
+	 * command is coalesced into it
+	 */
+	private String describe(Command command) {
+		String result = command.getClass().getSimpleName() + " "
+				+ worms.indexOf(command.getWorm());
+		if (command instanceof Move) {
+			return result + " " + ((Move) command).getNbSteps();
+		} else if (command instanceof Turn) {
+			return result + " " + ((Turn) command).getAngle();
+		} else if (command instanceof Resize) {
+			return result + " " + ((Resize) command).getFactor();
+		} else if (command instanceof Rename) {
+			return result + " " + ((Rename) command).getNewName();
+		}
+		return result;
+	}
+
+	/**
+	 * Replay the journal, and check that the worms end up exactly as they
+	 * were at the end of the recorded game
+	 */
+	private void assertReplayMatches(JournalReader reader) {
+		JournalPlayer player = new JournalPlayer(new Facade(), reader);
+		player.run();
+		assertSameWorms(gameState, player.getGameState());
+	}
+
+	private static void assertSameWorms(GameState expectedState,
+			GameState actualState) {
+		IFacade expectedFacade = expectedState.getFacade();
+		IFacade actualFacade = actualState.getFacade();
+		List<Worm> expectedWorms = new ArrayList<Worm>(
+				expectedState.getWorms());
+		List<Worm> actualWorms = new ArrayList<Worm>(actualState.getWorms());
+		assertEquals(expectedWorms.size(), actualWorms.size());
+		for (int i = 0; i < expectedWorms.size(); i++) {
+			Worm expected = expectedWorms.get(i);
+			Worm actual = actualWorms.get(i);
+			assertEquals(expectedFacade.getName(expected),
+					actualFacade.getName(actual));
+			assertEquals(expectedFacade.getX(expected),
+					actualFacade.getX(actual), 0);
+			assertEquals(expectedFacade.getY(expected),
+					actualFacade.getY(actual), 0);
+			assertEquals(expectedFacade.getOrientation(expected),
+					actualFacade.getOrientation(actual), 0);
+			assertEquals(expectedFacade.getRadius(expected),
+					actualFacade.getRadius(actual), 0);
+			assertEquals(expectedFacade.getActionPoints(expected),
+					actualFacade.getActionPoints(actual));
+		}
+	}
+
+	@Test
+	public void testClosedJournalRoundTrip() throws IOException {
+		playGame();
+		journal.close();
+		assertEquals(commands.size(), journal.getNbRecords());
+		assertEquals(journal.getLength(), file.length());
+
+		JournalReader reader = new JournalReader(file.getPath());
+		assertRecordsMatch(reader);
+		assertReplayMatches(reader);
+	}
+
+	@Test
+	public void testUnclosedJournalRoundTrip() throws IOException {
+		playGame();
+		// the rest of the mapped region is zero-filled
+		assertTrue(file.length() > journal.getLength());
+
+		JournalReader reader = new JournalReader(file.getPath());
+		assertRecordsMatch(reader);
+		assertReplayMatches(reader);
+	}
+
+	@Test
+	public void testRenamesAreRecorded() throws IOException {
+		playGame();
+		// the worms were renamed, or kept their name if it was invalid
+		IFacade facade = gameState.getFacade();
+		assertEquals("James o'Hara", facade.getName(worms.get(3)));
+		assertFalse(UNICODE_NAME.equals(facade.getName(worms.get(2))));
+
+		JournalReader reader = new JournalReader(file.getPath());
+		List<String> names = new ArrayList<String>();
+		while (reader.next()) {
+			Command command = reader.createCommand(facade, worms, null);
+			if (command instanceof Rename) {
+				names.add(((Rename) command).getNewName());
+			}
+		}
+		assertEquals(2, names.size());
+		assertEquals("James o'Hara", names.get(0));
+		assertEquals(UNICODE_NAME, names.get(1));
+	}
+
+	@Test
+	public void testUnknownWormIsRefused() throws IOException {
+		IFacade facade = new Facade();
+		Worm stranger = facade.createWorm(0, 0, 0, 1, "Stranger");
+		try {
+			journal.record(new Move(facade, stranger, 1, null), 0);
+			fail();
+		} catch (IllegalArgumentException exc) {
+			assertEquals(0, journal.getNbRecords());
+		}
+		playGame();
+		journal.close();
+		JournalReader reader = new JournalReader(file.getPath());
+		assertRecordsMatch(reader);
+	}
+
+	@Test
+	public void testLoadedGameRoundTrip() throws IOException {
+		// a saved game whose worms are not where the seed would put them
+		playGame();
+		journal.close();
+		File saved = File.createTempFile("game", ".sav");
+		saved.deleteOnExit();
+		try {
+			GameStateFile.save(gameState, saved.getPath());
+			gameState = GameStateFile.load(saved.getPath());
+		} finally {
+			saved.delete();
+		}
+		worms = new ArrayList<Worm>(gameState.getWorms());
+		commands.clear();
+		ticks.clear();
+		tick = 0;
+		journal = gameState.startJournal(file.getPath());
+
+		playGame();
+		journal.close();
+		JournalReader reader = new JournalReader(file.getPath());
+		assertRecordsMatch(reader);
+		assertReplayMatches(reader);
+	}
+
+	@Test
+	public void testSeekWhileDroppingOldest() throws IOException {
+		journal.close();
+		gameState = new GameState(new Facade(), SEED, 1024, 768);
+		gameState.setCommandQueueCapacity(3, OverflowPolicy.DROP_OLDEST);
+		gameState.startGame(NB_WORMS);
+		worms = new ArrayList<Worm>(gameState.getWorms());
+		journal = gameState.startJournal(file.getPath());
+		journal.setKeyframeInterval(1);
+		IFacade facade = gameState.getFacade();
+		Worm first = worms.get(0);
+		Worm second = worms.get(1);
+		enqueue(new Move(facade, first, 3, null));
+		enqueue(new Move(facade, second, 3, null));
+		evolve(1);
+		// the second lane became active last, but its waiting command is
+		// the oldest one, so it is dropped when the queue overflows
+		enqueue(new Resize(facade, second, 1.5, null));
+		enqueue(new Resize(facade, first, 0.5, null));
+		evolve(1);
+		enqueue(new Jump(facade, first, null));
+		enqueue(new Jump(facade, second, null));
+		for (int i = 0; i < 10000 && gameState.getNbPendingCommands() > 0; i++) {
+			evolve(1);
+		}
+		journal.close();
+		assertEquals(1, gameState.getCommandMetrics().getNbDropped());
+
+		JournalReader reader = new JournalReader(file.getPath());
+		assertTrue(reader.getNbKeyframes() > 2);
+		for (int k = 0; k < reader.getNbKeyframes(); k++) {
+			JournalPlayer sought = new JournalPlayer(new Facade(),
+					new JournalReader(file.getPath()));
+			sought.seek(reader.getKeyframeTick(k));
+			sought.run();
+			assertSameWorms(gameState, sought.getGameState());
+		}
+	}
+
+	@Test
+	public void testSeekIntoBusyRecording() throws IOException {
+		journal.setKeyframeInterval(10);
+		IFacade facade = gameState.getFacade();
+		// keep every worm busy: moves and jumps take several steps each
+		for (int round = 0; round < 20; round++) {
+			for (int i = 0; i < NB_WORMS; i++) {
+				Worm worm = worms.get(i);
+				enqueue(new Move(facade, worm, 1 + (round + i) % 3, null));
+				enqueue(new Turn(facade, worm, 0.25, null));
+				enqueue(new Jump(facade, worm, null));
+				enqueue(new Resize(facade, worm, round % 2 == 0 ? 1.1 : 0.9,
+						null));
+			}
+			evolve(7);
+		}
+		long lastBusyTick = tick;
+		assertTrue(gameState.getNbPendingCommands() > 0);
+		for (int i = 0; i < 10000 && gameState.getNbPendingCommands() > 0; i++) {
+			evolve(1);
+		}
+		journal.close();
+
+		JournalReader reader = new JournalReader(file.getPath());
+		// a keyframe every 10 steps, although commands were executing
+		assertTrue(reader.getNbKeyframes() > lastBusyTick / 10);
+		for (int k = 0; k < reader.getNbKeyframes(); k++) {
+			assertEquals(10 * k, reader.getKeyframeTick(k));
+		}
+
+		long[] targets = { 10, 25, 63, 100, lastBusyTick - 1 };
+		for (long target : targets) {
+			JournalPlayer played = new JournalPlayer(new Facade(),
+					new JournalReader(file.getPath()));
+			while (played.getTick() < target) {
+				played.step();
+			}
+			JournalPlayer sought = new JournalPlayer(new Facade(),
+					new JournalReader(file.getPath()));
+			sought.seek(target);
+			assertEquals(target, sought.getTick());
+			assertTrue(sought.getGameState().getNbPendingCommands() > 0);
+			assertEquals(played.getGameState().getNbPendingCommands(), sought
+					.getGameState().getNbPendingCommands());
+			assertSameWorms(played.getGameState(), sought.getGameState());
+
+			sought.run();
+			assertSameWorms(gameState, sought.getGameState());
+		}
+	}
+}
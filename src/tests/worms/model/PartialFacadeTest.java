@@ -1,6 +1,8 @@
 package tests.worms.model;
 import static org.junit.Assert.*;
 
+import java.util.BitSet;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -14,11 +16,19 @@ public class PartialFacadeTest {
 
 	private static final double EPS = Util.DEFAULT_EPSILON;
 
-	private IFacade facade;
+	protected IFacade facade;
 
 	@Before
 	public void setup() {
-		facade = new Facade();
+		facade = createFacade();
+	}
+
+	/**
+	 * Create the facade under test; subclasses run all tests against their
+	 * own facade
+	 */
+	protected IFacade createFacade() {
+		return new Facade();
 	}
 
 	@Test
@@ -48,5 +58,109 @@ public class PartialFacadeTest {
 		Worm worm = facade.createWorm(0, 0, 3 * Math.PI / 2, 1, "Test");
 		facade.jump(worm);
 	}
-	
+
+	@Test
+	public void testMoveAll() {
+		Worm mover = facade.createWorm(0, 0, 0, 1, "Mover");
+		Worm tired = facade.createWorm(0, 0, 0, 1, "Tired");
+		BitSet moved = facade.moveAll(new Worm[] { mover, tired, null },
+				new int[] { 5, 10000, 1 });
+		assertTrue(moved.get(0));
+		assertFalse(moved.get(1));
+		assertFalse(moved.get(2));
+		assertEquals(5, facade.getX(mover), EPS);
+		assertEquals(0, facade.getX(tired), EPS);
+	}
+
+	@Test
+	public void testTurnAll() {
+		Worm worm = facade.createWorm(0, 0, 0, 1, "Test");
+		BitSet turned = facade.turnAll(new Worm[] { worm },
+				new double[] { Math.PI });
+		assertTrue(turned.get(0));
+		assertEquals(Math.PI, facade.getOrientation(worm), EPS);
+		assertEquals(4448 - 30, facade.getActionPoints(worm));
+	}
+
+	@Test
+	public void testJumpAll() {
+		Worm jumper = facade.createWorm(0, 0, Math.PI / 4, 1, "Jumper");
+		Worm faller = facade.createWorm(0, 0, 3 * Math.PI / 2, 1, "Faller");
+		BitSet jumped = facade.jumpAll(new Worm[] { jumper, faller });
+		assertTrue(jumped.get(0));
+		assertFalse(jumped.get(1));
+		assertEquals(0, facade.getActionPoints(jumper));
+		assertEquals(0, facade.getX(faller), EPS);
+	}
+
+	@Test
+	public void testJumpQueriesWithoutException() {
+		Worm worm = facade.createWorm(0, 0, 3 * Math.PI / 2, 1, "Test");
+		assertFalse(facade.canJump(worm));
+		assertTrue(Double.isNaN(facade.findJumpTime(worm)));
+		assertNull(facade.findJumpTrajectory(worm));
+		facade.turn(worm, 3 * Math.PI / 4);
+		assertTrue(facade.canJump(worm));
+		assertEquals(facade.getJumpTime(worm), facade.findJumpTime(worm), EPS);
+	}
+
+	@Test
+	public void testSpatialQueries() {
+		Worm near = facade.createWorm(0, 0, 0, 1, "Near");
+		Worm far = facade.createWorm(10, 0, Math.PI, 0.5, "Far");
+		assertSame(near, facade.getWormAt(0.5, 0.5));
+		assertNull(facade.getWormAt(5, 0));
+		assertSame(far, facade.getNearestWorm(7, 0));
+		assertEquals(2, facade.getWormsInCircle(5, 0, 4.5).size());
+		facade.move(far, 10);
+		assertSame(near, facade.getNearestWorm(2, 0));
+		assertSame(far, facade.getWormAt(5, 0));
+	}
+
+	@Test(timeout = 10000)
+	public void testSpatialQueriesOnDiagonals() {
+		int nbWorms = 5000;
+		Worm[] diagonal = new Worm[nbWorms];
+		Worm[] antidiagonal = new Worm[nbWorms];
+		for (int i = 0; i < nbWorms; i++) {
+			diagonal[i] = facade.createWorm(i + 0.5, i + 0.5, 0, 0.25, "Diagonal");
+			antidiagonal[i] = facade.createWorm(i + 0.5, -i - 0.5, 0, 0.25, "Antidiagonal");
+		}
+		for (int i = 0; i < nbWorms; i++) {
+			assertSame(diagonal[i], facade.getWormAt(i + 0.5, i + 0.6));
+			assertSame(antidiagonal[i], facade.getNearestWorm(i + 0.6, -i - 0.5));
+		}
+		assertEquals(3, facade.getWormsInCircle(100.5, 100.5, 1.5).size());
+		assertEquals(2 * nbWorms, facade.getWormsInCircle(0, 0, 2 * nbWorms).size());
+	}
+
+	@Test(timeout = 10000)
+	public void testSpatialQueriesOverHugeDistances() {
+		// the grid spans almost all columns and rows that an int can hold
+		Worm first = facade.createWorm(-2e9, -2e9, 0, 1, "First");
+		Worm second = facade.createWorm(2e9, 2e9, 0, 1, "Second");
+		assertEquals(2, facade.getWormsInCircle(0, 0, 3e9).size());
+		assertSame(second, facade.getNearestWorm(1e9, 1e9));
+		assertSame(first, facade.getWormAt(-2e9, -2e9));
+	}
+
+	@Test
+	public void testRestoreWorm() {
+		Worm worm = facade.createWorm(0, 0, 0, 1, "Test");
+		facade.restoreWorm(worm, 10, -2, 3 * Math.PI, 0.5, "Restored", 100);
+		assertEquals(10, facade.getX(worm), EPS);
+		assertEquals(-2, facade.getY(worm), EPS);
+		assertEquals(Math.PI, facade.getOrientation(worm), EPS);
+		assertEquals(0.5, facade.getRadius(worm), EPS);
+		assertEquals("Restored", facade.getName(worm));
+		assertEquals(100, facade.getActionPoints(worm));
+		assertSame(worm, facade.getWormAt(10, -2));
+		assertNull(facade.getWormAt(0, 0));
+	}
+
+	@Test(expected = ModelException.class)
+	public void testRestoreWormInvalidName() {
+		Worm worm = facade.createWorm(0, 0, 0, 1, "Test");
+		facade.restoreWorm(worm, 10, -2, 0, 1, "x", 100);
+	}
 }
@@ -0,0 +1,54 @@
+package tests.worms.model;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import worms.model.Facade;
+import worms.model.IFacade;
+import worms.model.ModelException;
+import worms.model.Worm;
+import worms.model.WormPopulation;
+import worms.util.Util;
+
+/**
+ * Runs all tests of PartialFacadeTest against a Facade whose population
+ * starts with room for a single worm, so that it has to grow.
+ */
+public class PopulationFacadeTest extends PartialFacadeTest {
+
+	private static final double EPS = Util.DEFAULT_EPSILON;
+
+	@Override
+	protected IFacade createFacade() {
+		return new Facade(new WormPopulation(1));
+	}
+
+	private WormPopulation getPopulation() {
+		return ((Facade) facade).getPopulation();
+	}
+
+	@Test
+	public void testWormsShareThePopulation() {
+		Worm first = facade.createWorm(0, 0, 0, 1, "First");
+		Worm second = facade.createWorm(3, 4, Math.PI, 0.5, "Second");
+		WormPopulation population = getPopulation();
+		assertEquals(2, population.size());
+		assertSame(first, population.getWorm(0));
+		assertSame(second, population.getWorm(1));
+		facade.move(first, 2);
+		assertEquals(2, population.getX(0), EPS);
+		assertEquals(3, population.getX(1), EPS);
+		assertEquals("Second", population.getName(1));
+	}
+
+	@Test
+	public void testInvalidWormIsNotAdded() {
+		try {
+			facade.createWorm(0, 0, 0, 0.1, "Small");
+			fail();
+		} catch (ModelException exc) {
+			assertEquals(0, getPopulation().size());
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package tests.worms.model;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks that the keys of the cells of the (package-private) grid of a
+ * facade spread over the buckets of a hash table, also for cells that
+ * share a row, a column or a diagonal.
+ */
+public class WormGridTest {
+
+	private static final int NB_CELLS = 4096;
+
+	private static long toKey(int column, int row) throws Exception {
+		Method toKey = Class.forName("worms.model.WormGrid").getDeclaredMethod(
+				"toKey", int.class, int.class);
+		toKey.setAccessible(true);
+		return (Long) toKey.invoke(null, column, row);
+	}
+
+	/**
+	 * The index of the bucket of the given key in a HashMap with the given
+	 * number of buckets
+	 */
+	private static int bucket(long key, int nbBuckets) {
+		int hash = Long.valueOf(key).hashCode();
+		return (hash ^ (hash >>> 16)) & (nbBuckets - 1);
+	}
+
+	private static void assertSpread(int[] columns, int[] rows) throws Exception {
+		Set<Integer> buckets = new HashSet<Integer>();
+		for (int i = 0; i < columns.length; i++)
+			buckets.add(bucket(toKey(columns[i], rows[i]), NB_CELLS));
+		// random keys would fill about 63% of the buckets
+		assertTrue(buckets.size() + " buckets", buckets.size() > NB_CELLS / 2);
+	}
+
+	@Test
+	public void testKeysOfLinesSpread() throws Exception {
+		int[] zeros = new int[NB_CELLS];
+		int[] up = new int[NB_CELLS];
+		int[] down = new int[NB_CELLS];
+		for (int i = 0; i < NB_CELLS; i++) {
+			up[i] = i - NB_CELLS / 2;
+			down[i] = -up[i];
+		}
+		assertSpread(up, zeros);
+		assertSpread(zeros, up);
+		assertSpread(up, up);
+		assertSpread(up, down);
+	}
+
+	@Test
+	public void testKeysAreUnique() throws Exception {
+		Set<Long> keys = new HashSet<Long>();
+		for (int column = -64; column < 64; column++)
+			for (int row = -64; row < 64; row++)
+				assertTrue(keys.add(toKey(column, row)));
+		assertTrue(keys.add(toKey(Integer.MAX_VALUE, Integer.MIN_VALUE)));
+		assertTrue(keys.add(toKey(Integer.MIN_VALUE, Integer.MAX_VALUE)));
+	}
+}
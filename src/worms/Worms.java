@@ -2,6 +2,7 @@ package worms;
 
 import worms.gui.GUIOptions;
 import worms.gui.WormsGUI;
+import worms.gui.game.commands.OverflowPolicy;
 import worms.model.Facade;
 
 public class Worms {
@@ -17,6 +18,20 @@ public class Worms {
 			String arg = args[i];
 			if ("-window".equals(arg)) {
 				options.disableFullScreen = true;
+			} else if ("-active".equals(arg)) {
+				options.activeRendering = true;
+			} else if ("-threaded".equals(arg)) {
+				options.simulationThread = true;
+			} else if ("-queue".equals(arg)) {
+				options.commandQueueCapacity = Integer.parseInt(args[++i]);
+			} else if ("-overflow".equals(arg)) {
+				options.overflowPolicy = OverflowPolicy.parse(args[++i]);
+			} else if ("-record".equals(arg)) {
+				options.journalFile = args[++i];
+			} else if ("-replay".equals(arg)) {
+				options.replayFile = args[++i];
+			} else if ("-load".equals(arg)) {
+				options.loadFile = args[++i];
 			} else if ("-seed".equals(arg)) {
 				long randomSeed = Long.parseLong(args[++i]);
 				options.randomSeed = randomSeed;
@@ -0,0 +1,155 @@
+package worms.gui;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The part of a screen that has changed since it was last repainted.
+ *
+ * The region is a small number of rectangles: a changed area is merged with
+ * the rectangles that it overlaps or that are close to it, so that changes
+ * far apart (e.g., two worms in opposite corners) are repainted separately.
+ * When there are too many rectangles, the new area is merged with the one
+ * that grows the least. The whole screen can be marked as changed when the
+ * changed area is not known.
+ */
+public class DirtyRegion {
+
+	/**
+	 * Extra pixels around every changed area, for anti-aliased edges
+	 */
+	private static final int MARGIN = 2;
+
+	/**
+	 * Rectangles that are at most this many pixels apart are merged, since
+	 * painting a little more costs less than painting twice
+	 */
+	private static final int MERGE_DISTANCE = 16;
+
+	/**
+	 * Maximum number of rectangles in a region
+	 */
+	private static final int MAX_AREAS = 8;
+
+	private final List<Rectangle> areas = new ArrayList<Rectangle>(MAX_AREAS);
+	private boolean allDirty;
+
+	/**
+	 * Add the given area, or the whole screen if it is null
+	 */
+	public synchronized void add(Rectangle2D area) {
+		if (area == null) {
+			allDirty = true;
+		} else if (!allDirty) {
+			Rectangle bounds = area.getBounds();
+			bounds.grow(MARGIN, MARGIN);
+			addArea(bounds);
+		}
+	}
+
+	/**
+	 * Add all areas of the given region, which is not changed
+	 */
+	public void add(DirtyRegion region) {
+		List<Rectangle> regionAreas;
+		synchronized (region) {
+			if (region.allDirty) {
+				markAll();
+				return;
+			}
+			regionAreas = new ArrayList<Rectangle>(region.areas.size());
+			for (Rectangle area : region.areas) {
+				regionAreas.add(new Rectangle(area));
+			}
+		}
+		synchronized (this) {
+			if (!allDirty) {
+				for (Rectangle area : regionAreas) {
+					addArea(area);
+				}
+			}
+		}
+	}
+
+	private void addArea(Rectangle area) {
+		boolean merged;
+		do {
+			merged = false;
+			for (Iterator<Rectangle> it = areas.iterator(); it.hasNext();) {
+				Rectangle other = it.next();
+				if (isNear(area, other)) {
+					area.add(other);
+					it.remove();
+					merged = true;
+				}
+			}
+		} while (merged);
+		if (areas.size() == MAX_AREAS) {
+			area.add(areas.remove(indexOfCheapestMerge(area)));
+			addArea(area);
+		} else {
+			areas.add(area);
+		}
+	}
+
+	private static boolean isNear(Rectangle area, Rectangle other) {
+		return area.x - MERGE_DISTANCE < other.x + other.width
+				&& other.x - MERGE_DISTANCE < area.x + area.width
+				&& area.y - MERGE_DISTANCE < other.y + other.height
+				&& other.y - MERGE_DISTANCE < area.y + area.height;
+	}
+
+	/**
+	 * Index of the rectangle whose bounding rectangle with the given area is
+	 * the smallest
+	 */
+	private int indexOfCheapestMerge(Rectangle area) {
+		int result = 0;
+		long cheapest = Long.MAX_VALUE;
+		for (int i = 0; i < areas.size(); i++) {
+			Rectangle union = area.union(areas.get(i));
+			long cost = (long) union.width * union.height;
+			if (cost < cheapest) {
+				cheapest = cost;
+				result = i;
+			}
+		}
+		return result;
+	}
+
+	public synchronized void markAll() {
+		allDirty = true;
+		areas.clear();
+	}
+
+	public synchronized boolean isEmpty() {
+		return !allDirty && areas.isEmpty();
+	}
+
+	/**
+	 * Return the areas of a screen with the given size that have to be
+	 * repainted, which do not overlap, and start over with an empty region.
+	 */
+	public synchronized List<Rectangle> takeAreas(int width, int height) {
+		Rectangle screen = new Rectangle(0, 0, width, height);
+		List<Rectangle> result;
+		if (allDirty) {
+			result = Collections.singletonList(screen);
+		} else {
+			result = new ArrayList<Rectangle>(areas.size());
+			for (Rectangle area : areas) {
+				Rectangle visible = area.intersection(screen);
+				if (!visible.isEmpty()) {
+					result.add(visible);
+				}
+			}
+		}
+		areas.clear();
+		allDirty = false;
+		return result;
+	}
+}
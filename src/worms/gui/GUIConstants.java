@@ -17,11 +17,23 @@ public final class GUIConstants {
 	 */
 	public static final int FRAMERATE = 30; // fps
 
+	/**
+	 * Rate at which the game state evolves when it runs on its own thread, in
+	 * updates per (real) second
+	 */
+	public static final int SIMULATION_RATE = 60; // Hz
+
 	/**
 	 * Time (in worm-seconds) that elapses in 1 real second
 	 */
 	public static final double TIME_SCALE = 2;
 
+	/**
+	 * Time (in worm-seconds) over which the game state evolves in a single
+	 * simulation step
+	 */
+	public static final double TIME_STEP = TIME_SCALE / SIMULATION_RATE;
+
 	/**
 	 * Scale at which the game is drawn to the screen (in pixels per worm-meter)
 	 */
@@ -1,6 +1,26 @@
 package worms.gui;
 
+import worms.gui.game.commands.CommandProcessor;
+import worms.gui.game.commands.OverflowPolicy;
+
 public class GUIOptions {
 	public boolean disableFullScreen = false;
 	public long randomSeed = 3;
+	public boolean activeRendering = false;
+	public boolean simulationThread = false;
+	public int commandQueueCapacity = CommandProcessor.DEFAULT_CAPACITY;
+	public OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+	/**
+	 * File in which the commands of every game are recorded, or null
+	 */
+	public String journalFile = null;
+	/**
+	 * File with the recorded game that is shown instead of a new game, or
+	 * null
+	 */
+	public String replayFile = null;
+	/**
+	 * File with the saved game that is played instead of a new game, or null
+	 */
+	public String loadFile = null;
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package worms.gui;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -8,17 +9,24 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
+import worms.gui.game.PlayGameScreen;
 import worms.gui.game.commands.Command;
+import worms.gui.game.commands.CommandJournal;
+import worms.gui.game.commands.CommandMetrics;
 import worms.gui.game.commands.CommandProcessor;
+import worms.gui.game.commands.JournalReader;
+import worms.gui.game.commands.OverflowPolicy;
 import worms.model.IFacade;
 import worms.model.Worm;
 
 public class GameState {
 
+	private final long randomSeed;
 	private final Random random;
 	private final IFacade facade;
-	private final Collection<Worm> worms = new ArrayList<Worm>();
+	private final List<Worm> worms = new ArrayList<Worm>();
 	private final CommandProcessor commandProcessor = new CommandProcessor();
+	private CommandJournal journal;
 
 	private Iterator<Worm> selection;
 	private Worm selectedWorm;
@@ -27,6 +35,7 @@ public class GameState {
 	private final int height;
 
 	public GameState(IFacade facade, long randomSeed, int width, int height) {
+		this.randomSeed = randomSeed;
 		this.random = new Random(randomSeed);
 		this.facade = facade;
 		this.width = width;
@@ -38,9 +47,9 @@ public class GameState {
 			"Kara");
 	private int nameIndex = 0;
 
-	private void createRandomWorms() {
-		for (int i = 0; i < wormNames.size(); i++) {
-			String name = wormNames.get(nameIndex++);
+	private void createRandomWorms(int nbWorms) {
+		for (int i = 0; i < nbWorms; i++) {
+			String name = wormNames.get(nameIndex++ % wormNames.size());
 			double radius = 0.25 + random.nextDouble() / 4;
 			double worldWidth = GUIUtils.pixelToMeter(width);
 			double worldHeight = GUIUtils.pixelToMeter(height);
@@ -60,15 +69,22 @@ public class GameState {
 	}
 
 	public void startGame() {
-		createRandomWorms();
+		startGame(wormNames.size());
+	}
+
+	/**
+	 * Start a game with the given number of randomly placed worms
+	 */
+	public void startGame(int nbWorms) {
+		createRandomWorms(nbWorms);
 		selectNextWorm();
 	}
 
-	public Worm getSelectedWorm() {
+	public synchronized Worm getSelectedWorm() {
 		return selectedWorm;
 	}
 
-	public void selectNextWorm() {
+	public synchronized void selectNextWorm() {
 		if (selection == null || !selection.hasNext()) {
 			selection = worms.iterator();
 		}
@@ -79,10 +95,59 @@ public class GameState {
 		}
 	}
 
-	public void selectWorm(Worm worm) {
+	public synchronized void selectWorm(Worm worm) {
 		selectedWorm = worm;
 	}
 
+	/**
+	 * Select the worm with the given index (in the order in which the worms
+	 * were added), or no worm if the index is -1; selectNextWorm continues
+	 * with the worm after it
+	 */
+	synchronized void selectWorm(int index) {
+		if (index < 0) {
+			selection = null;
+			selectWorm(null);
+		} else {
+			selection = worms.listIterator(index + 1);
+			selectWorm(worms.get(index));
+		}
+	}
+
+	/**
+	 * Index of the selected worm (in the order in which the worms were
+	 * added), or -1 if no worm is selected
+	 */
+	synchronized int getSelectedWormIndex() {
+		return selectedWorm == null ? -1 : worms.indexOf(selectedWorm);
+	}
+
+	/**
+	 * Add the given worm, which was created by the facade of this game (e.g.,
+	 * when a saved game is loaded)
+	 */
+	void addWorm(Worm worm) {
+		worms.add(worm);
+	}
+
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+
+	/**
+	 * Width of the world, in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Height of the world, in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
 	public IFacade getFacade() {
 		return facade;
 	}
@@ -91,12 +156,121 @@ public class GameState {
 		return Collections.unmodifiableCollection(worms);
 	}
 
-	public void evolve(double timeDelta) {
+	/**
+	 * The worms of this game, in the order in which they were added
+	 */
+	List<Worm> getWormList() {
+		return worms;
+	}
+
+	public synchronized void evolve(double timeDelta) {
 		commandProcessor.advanceCommandQueue(timeDelta);
+		if (journal != null
+				&& journal.isKeyframeDue(commandProcessor.getNbAdvances())) {
+			journal.recordKeyframe(commandProcessor.getNbAdvances(), facade,
+					worms, commandProcessor);
+		}
+	}
+
+	/**
+	 * Drop all commands that have not finished yet, without finishing them
+	 * (e.g., before the state of the worms is restored)
+	 */
+	public synchronized void clearCommands() {
+		commandProcessor.clear();
+	}
+
+	/**
+	 * Give the given worms (all worms of this game, in the order in which
+	 * they were created) the state of the keyframe with the given index of
+	 * the given journal, and replace all commands by the ones that had not
+	 * finished then, which show their progress on the given screen (if it is
+	 * not null)
+	 * 
+	 * @return the number of simulation steps that were taken before the
+	 *         keyframe
+	 */
+	public synchronized long restoreKeyframe(JournalReader journal,
+			int index, List<Worm> worms, PlayGameScreen screen) {
+		commandProcessor.clear();
+		return journal.restoreKeyframe(index, facade, worms,
+				commandProcessor, screen);
+	}
+
+	/**
+	 * Submit the given command, from any thread; it is executed as the game
+	 * state evolves
+	 * 
+	 * @return false if the command was not accepted, because too many
+	 *         commands are waiting to be taken in
+	 */
+	public boolean enqueueCommand(Command cmd) {
+		return commandProcessor.submitCommand(cmd);
+	}
+
+	/**
+	 * Submit the given command, which was recorded in a journal of a game
+	 * with the same settings (see CommandProcessor.submitRecordedCommand)
+	 * 
+	 * @return false if the command was not accepted, because too many
+	 *         commands are waiting to be taken in
+	 */
+	public boolean enqueueRecordedCommand(Command cmd) {
+		return commandProcessor.submitRecordedCommand(cmd);
+	}
+
+	/**
+	 * Set the number of commands that may wait to be executed, and what
+	 * happens to new commands beyond that
+	 */
+	public synchronized void setCommandQueueCapacity(int capacity,
+			OverflowPolicy overflowPolicy) {
+		commandProcessor.setCapacity(capacity, overflowPolicy);
+	}
+
+	/**
+	 * Set whether repeated commands for the same worm are merged (see
+	 * CommandProcessor.setCoalescing)
+	 */
+	public synchronized void setCommandCoalescing(boolean coalescing) {
+		commandProcessor.setCoalescing(coalescing);
+	}
+
+	/**
+	 * Record every command of this game in a new journal in the file with the
+	 * given name, from which the game can be replayed, with a keyframe of the
+	 * state of the worms every so many steps. The game must have started,
+	 * but not evolved yet.
+	 */
+	public synchronized CommandJournal startJournal(String filename)
+			throws IOException {
+		if (commandProcessor.getNbAdvances() > 0) {
+			throw new IllegalStateException("The game has already evolved");
+		}
+		journal = new CommandJournal(filename, randomSeed, width, height,
+				worms, GUIConstants.TIME_STEP, commandProcessor);
+		journal.recordKeyframe(0, facade, worms, commandProcessor);
+		commandProcessor.setJournal(journal);
+		return journal;
+	}
+
+	/**
+	 * Whether so many commands are waiting that no new ones should be
+	 * submitted for now
+	 */
+	public boolean isSaturated() {
+		return commandProcessor.isSaturated();
+	}
+
+	public CommandMetrics getCommandMetrics() {
+		return commandProcessor.getMetrics();
 	}
 
-	public void enqueueCommand(Command cmd) {
-		commandProcessor.enqueueCommand(cmd);
+	/**
+	 * Number of enqueued commands that have not finished yet
+	 */
+	public synchronized int getNbPendingCommands() {
+		return commandProcessor.getNbPendingCommands();
 	}
 
 }
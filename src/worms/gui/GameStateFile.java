@@ -0,0 +1,268 @@
+package worms.gui;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import worms.model.Facade;
+import worms.model.IFacade;
+import worms.model.ModelException;
+import worms.model.Worm;
+import worms.model.WormPopulation;
+
+/**
+ * Saves the state of a game to a binary file, and loads it again.
+ *
+ * The file starts with a header, followed by a table of the distinct names
+ * of the worms, and a fixed-size record for every worm:
+ *
+ * <pre>
+ * int magic, short version, long randomSeed, int width, int height,
+ * int nbWorms, int selection, int nbNames,
+ * nbNames * (int length, UTF-8 bytes of the name),
+ * nbWorms * (double x, double y, double orientation, double radius,
+ *     int actionPoints, int name)
+ * </pre>
+ *
+ * where selection is the index of the selected worm (-1 for none), and name
+ * is an index in the table of names. All numbers are big-endian.
+ *
+ * The file is read and written through a single direct buffer, so that
+ * loading a game creates no objects besides the worms and their (distinct)
+ * names. Commands that have not finished are not saved.
+ */
+public class GameStateFile {
+
+	private static final int MAGIC = 0x57534156; // "WSAV"
+	private static final short VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 2 + 8 + 4 * 5;
+	private static final int WORM_SIZE = 4 * 8 + 4 + 4;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Write the state of all worms of the given game, and which one is
+	 * selected, to the file with the given name
+	 */
+	public static void save(GameState gameState, String filename)
+			throws IOException {
+		FileOutputStream out = new FileOutputStream(filename);
+		try {
+			synchronized (gameState) {
+				save(gameState, out.getChannel());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void save(GameState gameState, FileChannel channel)
+			throws IOException {
+		IFacade facade = gameState.getFacade();
+		List<Worm> worms = gameState.getWormList();
+		// names are mostly shared between worms
+		Map<String, Integer> nameIndices = new HashMap<String, Integer>();
+		for (Worm worm : worms) {
+			String name = facade.getName(worm);
+			if (!nameIndices.containsKey(name)) {
+				nameIndices.put(name, nameIndices.size());
+			}
+		}
+		String[] names = new String[nameIndices.size()];
+		for (Map.Entry<String, Integer> entry : nameIndices.entrySet()) {
+			names[entry.getValue()] = entry.getKey();
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putLong(gameState.getRandomSeed());
+		buffer.putInt(gameState.getWidth());
+		buffer.putInt(gameState.getHeight());
+		buffer.putInt(worms.size());
+		buffer.putInt(gameState.getSelectedWormIndex());
+		buffer.putInt(names.length);
+		for (String name : names) {
+			byte[] bytes = name.getBytes(UTF8);
+			if (4 + bytes.length > BUFFER_SIZE) {
+				throw new IOException("Name too long to save: " + name);
+			}
+			flushIfFull(channel, buffer, 4 + bytes.length);
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+		for (Worm worm : worms) {
+			flushIfFull(channel, buffer, WORM_SIZE);
+			buffer.putDouble(facade.getX(worm));
+			buffer.putDouble(facade.getY(worm));
+			buffer.putDouble(facade.getOrientation(worm));
+			buffer.putDouble(facade.getRadius(worm));
+			buffer.putInt(facade.getActionPoints(worm));
+			buffer.putInt(nameIndices.get(facade.getName(worm)));
+		}
+		flush(channel, buffer);
+	}
+
+	/**
+	 * Write the contents of the given buffer to the given channel, unless it
+	 * has room for the given number of bytes
+	 */
+	private static void flushIfFull(FileChannel channel, ByteBuffer buffer,
+			int size) throws IOException {
+		if (buffer.remaining() < size) {
+			flush(channel, buffer);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Create a game with the worms that were saved in the file with the
+	 * given name, with the given facade, and select the worm that was
+	 * selected
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read, or does not hold a saved game
+	 *             of a supported version
+	 */
+	public static GameState load(IFacade facade, String filename)
+			throws IOException {
+		FileInputStream in = new FileInputStream(filename);
+		try {
+			return load(facade, in.getChannel(), filename);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Create a game with the worms that were saved in the file with the
+	 * given name, with a new facade whose population has room for exactly
+	 * those worms, and select the worm that was selected
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read, or does not hold a saved game
+	 *             of a supported version
+	 */
+	public static GameState load(String filename) throws IOException {
+		return load(null, filename);
+	}
+
+	private static GameState load(IFacade facade, FileChannel channel,
+			String filename) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.flip();
+		fill(channel, buffer, HEADER_SIZE);
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a saved game: " + filename);
+		}
+		short version = buffer.getShort();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version " + version + ": "
+					+ filename);
+		}
+		long randomSeed = buffer.getLong();
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		int nbWorms = buffer.getInt();
+		int selection = buffer.getInt();
+		int nbNames = buffer.getInt();
+		// every saved name belongs to a worm, and the file has to hold all
+		// of them, so that a broken header cannot make us allocate too much
+		if (nbWorms < 0 || nbNames < 0 || nbNames > nbWorms
+				|| (long) nbWorms * WORM_SIZE + (long) nbNames * 4 > channel
+						.size() - HEADER_SIZE) {
+			throw new IOException("Invalid number of worms " + nbWorms
+					+ " or names " + nbNames + ": " + filename);
+		}
+		if (facade == null) {
+			facade = new Facade(new WormPopulation(nbWorms));
+		}
+
+		String[] names = new String[nbNames];
+		byte[] bytes = new byte[0];
+		for (int i = 0; i < nbNames; i++) {
+			fill(channel, buffer, 4);
+			int length = buffer.getInt();
+			if (length < 0 || length > BUFFER_SIZE - 4) {
+				throw new IOException("Invalid name length " + length + ": "
+						+ filename);
+			}
+			fill(channel, buffer, length);
+			if (bytes.length < length) {
+				bytes = new byte[length];
+			}
+			buffer.get(bytes, 0, length);
+			names[i] = new String(bytes, 0, length, UTF8);
+		}
+
+		GameState gameState = new GameState(facade, randomSeed, width,
+				height);
+		for (int i = 0; i < nbWorms; i++) {
+			fill(channel, buffer, WORM_SIZE);
+			double x = buffer.getDouble();
+			double y = buffer.getDouble();
+			double orientation = buffer.getDouble();
+			double radius = buffer.getDouble();
+			int actionPoints = buffer.getInt();
+			int name = buffer.getInt();
+			if (name < 0 || name >= nbNames) {
+				throw new IOException("Invalid name of worm " + i + ": "
+						+ filename);
+			}
+			try {
+				Worm worm = facade.createWorm(x, y, orientation, radius,
+						names[name]);
+				if (facade.getActionPoints(worm) != actionPoints) {
+					facade.restoreWorm(worm, x, y, orientation, radius,
+							names[name], actionPoints);
+				}
+				gameState.addWorm(worm);
+			} catch (ModelException e) {
+				throw new IOException("Invalid state of worm " + i + ": "
+						+ filename);
+			}
+		}
+		if (selection < -1 || selection >= nbWorms) {
+			throw new IOException("Invalid selection: " + filename);
+		}
+		gameState.selectWorm(selection);
+		return gameState;
+	}
+
+	/**
+	 * Read from the given channel until the given buffer (ready to be read)
+	 * holds at least the given number of bytes
+	 *
+	 * @throws EOFException
+	 *             if the channel ends before that
+	 */
+	private static void fill(FileChannel channel, ByteBuffer buffer, int size)
+			throws IOException {
+		if (buffer.remaining() >= size) {
+			return;
+		}
+		buffer.compact();
+		while (buffer.position() < size) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Saved game is incomplete");
+			}
+		}
+		buffer.flip();
+	}
+}
@@ -0,0 +1,156 @@
+package worms.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import worms.gui.game.PlayGameScreen;
+import worms.gui.game.commands.JournalReader;
+import worms.model.IFacade;
+import worms.model.Worm;
+
+/**
+ * Plays back a game that was recorded in a CommandJournal: every command is
+ * enqueued right before the same simulation step as when it was recorded, so
+ * that the worms go through the same states.
+ *
+ * Playback can jump to any simulation step (seek): the state of the worms is
+ * restored from the last keyframe before that step, together with the
+ * commands that had not finished then, and only the commands after the
+ * keyframe are executed again.
+ *
+ * A player may only be used by the thread that evolves the game state.
+ */
+public class JournalPlayer {
+
+	private final JournalReader journal;
+	private final GameState gameState;
+	private final List<Worm> worms;
+	private PlayGameScreen screen;
+
+	private volatile long tick = 0;
+	private boolean hasNext;
+
+	/**
+	 * Create a player for the given journal, and a new game with the
+	 * settings that were recorded in it, whose worms are in the state of the
+	 * first keyframe (written when recording started, also for a game that
+	 * was loaded rather than started with random worms)
+	 */
+	public JournalPlayer(IFacade facade, JournalReader journal) {
+		this.journal = journal;
+		this.gameState = new GameState(facade, journal.getRandomSeed(),
+				journal.getWidth(), journal.getHeight());
+		gameState.setCommandQueueCapacity(journal.getQueueCapacity(),
+				journal.getOverflowPolicy());
+		gameState.setCommandCoalescing(journal.isCoalescing());
+		gameState.startGame(journal.getNbWorms());
+		this.worms = new ArrayList<Worm>(gameState.getWorms());
+		if (journal.getNbKeyframes() > 0) {
+			tick = gameState.restoreKeyframe(journal, 0, worms, null);
+		} else {
+			journal.rewind();
+		}
+		this.hasNext = journal.next();
+	}
+
+	public GameState getGameState() {
+		return gameState;
+	}
+
+	public JournalReader getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Show the commands that are played back on the given screen, or run
+	 * them headless if it is null
+	 */
+	public void setScreen(PlayGameScreen screen) {
+		this.screen = screen;
+	}
+
+	/**
+	 * Number of simulation steps taken (or skipped) so far (from any thread)
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Whether all recorded commands have been enqueued and have finished
+	 */
+	public boolean isFinished() {
+		return !hasNext && gameState.getNbPendingCommands() == 0;
+	}
+
+	/**
+	 * Enqueue the commands that were recorded right before the current
+	 * simulation step, and take that step
+	 */
+	public void step() {
+		step(screen);
+	}
+
+	private void step(PlayGameScreen commandScreen) {
+		IFacade facade = gameState.getFacade();
+		while (hasNext && journal.getTick() == tick) {
+			if (!gameState.enqueueRecordedCommand(journal.createCommand(
+					facade, worms, commandScreen))) {
+				throw new IllegalStateException("Too many commands in step "
+						+ tick);
+			}
+			hasNext = journal.next();
+		}
+		gameState.evolve(journal.getTimeStep());
+		tick++;
+	}
+
+	/**
+	 * Skip the simulation steps up to the next recorded command, if no
+	 * commands are pending (since those steps do not change the game), but
+	 * not beyond the given step
+	 */
+	private void skipIdleSteps(long limit) {
+		if (gameState.getNbPendingCommands() == 0) {
+			long next = hasNext ? journal.getTick() : limit;
+			tick = Math.max(tick, Math.min(next, limit));
+		}
+	}
+
+	/**
+	 * Play back all remaining commands, and take simulation steps until they
+	 * have finished, as fast as possible and without a screen
+	 */
+	public void run() {
+		while (!isFinished()) {
+			skipIdleSteps(Long.MAX_VALUE);
+			step(null);
+		}
+	}
+
+	/**
+	 * Continue playback after the given number of simulation steps.
+	 *
+	 * The state of the worms is restored from the last keyframe before that
+	 * step, and the commands between the keyframe and that step are executed
+	 * again, as fast as possible.
+	 */
+	public void seek(long target) {
+		int keyframe = journal.findKeyframe(target);
+		if (keyframe < 0) {
+			throw new IllegalArgumentException("No keyframe before step "
+					+ target);
+		}
+		tick = gameState.restoreKeyframe(journal, keyframe, worms, screen);
+		hasNext = journal.next();
+		if (screen != null) {
+			screen.updateSprites();
+		}
+		while (tick < target) {
+			skipIdleSteps(target);
+			if (tick < target) {
+				step();
+			}
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
@@ -11,6 +12,7 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 
+import javax.swing.JComponent;
 import javax.swing.JPanel;
 
 public abstract class Screen {
@@ -87,20 +89,43 @@ public abstract class Screen {
 		Component result = new JPanel() {
 			@Override
 			public void paint(Graphics g) {
+				long start = System.nanoTime();
 				super.paint(g);
-				Graphics2D graphics = (Graphics2D) g;
-				graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-						RenderingHints.VALUE_ANTIALIAS_ON);
-
-				Screen.this.paintScreen(graphics);
-
-				getCurrentInputMode().paintOverlay(graphics);
+				paintContents((Graphics2D) g);
+				screenPainted(start);
 			}
 		};
 		result.setBackground(Color.BLACK);
 		return result;
 	}
 
+	/**
+	 * Paint the screen and the overlay of the current input mode onto the
+	 * given (cleared) graphics
+	 */
+	protected void paintContents(Graphics2D graphics) {
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+
+		paintScreen(graphics);
+
+		paintOverlay(graphics);
+	}
+
+	/**
+	 * Paint the overlay of the current input mode
+	 */
+	protected void paintOverlay(Graphics2D graphics) {
+		getCurrentInputMode().paintOverlay(graphics);
+	}
+
+	/**
+	 * Called after Swing has painted this screen; painting started at the
+	 * given time (System.nanoTime)
+	 */
+	protected void screenPainted(long start) {
+	}
+
 	public WormsGUI getGUI() {
 		return gui;
 	}
@@ -149,6 +174,22 @@ public abstract class Screen {
 		getPanel().repaint();
 	}
 
+	public void repaint(Rectangle area) {
+		getPanel().repaint(area.x, area.y, area.width, area.height);
+	}
+
+	/**
+	 * Paint the given area right away, on the event dispatch thread, instead
+	 * of merging it with the other areas that are waiting to be repainted
+	 */
+	public void paintImmediately(Rectangle area) {
+		if (getPanel() instanceof JComponent) {
+			((JComponent) getPanel()).paintImmediately(area);
+		} else {
+			repaint(area);
+		}
+	}
+
 	public double getScreenX(double x) {
 		return getScreenWidth() / 2.0 + GUIUtils.meterToPixels(x);
 	}
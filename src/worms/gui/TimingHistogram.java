@@ -0,0 +1,141 @@
+package worms.gui;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of durations (in nanoseconds) over a rolling time window.
+ *
+ * Durations are counted in buckets whose width grows with the duration (32
+ * buckets for every power of two), so every percentile is reported within
+ * about 3% of the actual value, with a fixed amount of memory and no
+ * allocation when a duration is recorded.
+ *
+ * Durations are counted in the current window, and percentiles are computed
+ * over the current and the previous window together, so they always reflect
+ * between one and two windows of recent history.
+ */
+public class TimingHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// durations of 2^40 ns (about 18 minutes) and longer are counted as such
+	private static final int MAX_BITS = 40;
+	private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+	private static final int NB_BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+	private final long windowDuration;
+
+	private long[] current = new long[NB_BUCKETS];
+	private long[] previous = new long[NB_BUCKETS];
+	private long currentCount = 0;
+	private long previousCount = 0;
+	private long currentMax = 0;
+	private long previousMax = 0;
+	private long windowStart;
+
+	/**
+	 * Create a new histogram with windows of the given duration (in
+	 * nanoseconds)
+	 */
+	public TimingHistogram(long windowDuration) {
+		if (windowDuration <= 0) {
+			throw new IllegalArgumentException("Invalid window: "
+					+ windowDuration);
+		}
+		this.windowDuration = windowDuration;
+		this.windowStart = System.nanoTime();
+	}
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+	}
+
+	/**
+	 * The largest duration that is counted in the bucket with the given
+	 * index
+	 */
+	private static long bucketValue(int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long mantissa = (index & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+	/**
+	 * Record the given duration (in nanoseconds), which ended at the given
+	 * time (System.nanoTime)
+	 */
+	public synchronized void record(long duration, long now) {
+		rotate(now);
+		long value = Math.max(0, Math.min(MAX_VALUE, duration));
+		current[bucketIndex(value)]++;
+		currentCount++;
+		if (value > currentMax) {
+			currentMax = value;
+		}
+	}
+
+	private void rotate(long now) {
+		long elapsed = now - windowStart;
+		if (elapsed < windowDuration) {
+			return;
+		}
+		long[] cleared = previous;
+		Arrays.fill(cleared, 0);
+		if (elapsed < 2 * windowDuration) {
+			previous = current;
+			previousCount = currentCount;
+			previousMax = currentMax;
+		} else {
+			// nothing was recorded during the last window
+			Arrays.fill(current, 0);
+			previousCount = 0;
+			previousMax = 0;
+		}
+		current = cleared;
+		currentCount = 0;
+		currentMax = 0;
+		windowStart = now;
+	}
+
+	/**
+	 * Number of durations in the last one or two windows
+	 */
+	public synchronized long getCount() {
+		return currentCount + previousCount;
+	}
+
+	/**
+	 * Longest duration in the last one or two windows, in nanoseconds
+	 */
+	public synchronized long getMax() {
+		return Math.max(currentMax, previousMax);
+	}
+
+	/**
+	 * The duration (in nanoseconds) that the given percentage (between 0 and
+	 * 100) of the durations in the last one or two windows does not exceed,
+	 * or 0 if no durations were recorded
+	 */
+	public synchronized long getPercentile(double percentage) {
+		long count = currentCount + previousCount;
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentage / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < NB_BUCKETS; i++) {
+			seen += current[i] + previous[i];
+			if (seen >= rank) {
+				return Math.min(bucketValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+}
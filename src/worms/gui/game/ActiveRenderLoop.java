@@ -0,0 +1,107 @@
+package worms.gui.game;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+
+import javax.swing.SwingUtilities;
+
+import worms.gui.GUIConstants;
+
+/**
+ * Drives a play screen that is drawn onto a canvas with a buffer strategy,
+ * instead of through Swing repaints.
+ *
+ * A dedicated thread advances the game state (unless a SimulationLoop does
+ * that) and draws every frame into the back buffer, and flips the buffers at
+ * GUIConstants.FRAMERATE.
+ */
+class ActiveRenderLoop implements Runnable {
+
+	private static final int NB_BUFFERS = 2;
+
+	private final PlayGameScreen screen;
+	private final Canvas canvas;
+	private final boolean simulate;
+
+	private volatile boolean running = false;
+	private Thread thread;
+
+	public ActiveRenderLoop(PlayGameScreen screen, Canvas canvas,
+			boolean simulate) {
+		this.screen = screen;
+		this.canvas = canvas;
+		this.simulate = simulate;
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this, "Worms render loop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	@Override
+	public void run() {
+		try {
+			loop();
+		} catch (final RuntimeException e) {
+			running = false;
+			e.printStackTrace();
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					screen.getGUI().showError(
+							e.getClass().getName() + ": " + e.getMessage());
+				}
+			});
+		}
+	}
+
+	private void loop() {
+		canvas.createBufferStrategy(NB_BUFFERS);
+		BufferStrategy strategy = canvas.getBufferStrategy();
+
+		final long frameDuration = 1000000000L / GUIConstants.FRAMERATE;
+		while (running && canvas.isDisplayable()) {
+			long frameStart = System.nanoTime();
+
+			if (simulate) {
+				screen.tick();
+			}
+			renderFrame(strategy);
+
+			long sleep = frameDuration - (System.nanoTime() - frameStart);
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep / 1000000L, (int) (sleep % 1000000L));
+				} catch (InterruptedException e) {
+					running = false;
+				}
+			}
+		}
+	}
+
+	private void renderFrame(BufferStrategy strategy) {
+		do {
+			do {
+				Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+				try {
+					g.setColor(Color.BLACK);
+					g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+					screen.renderFrame(g);
+				} finally {
+					g.dispose();
+				}
+			} while (strategy.contentsRestored());
+			strategy.show();
+		} while (strategy.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
+	}
+}
@@ -0,0 +1,88 @@
+package worms.gui.game;
+
+/**
+ * Divides real time into simulation steps of a fixed duration.
+ *
+ * Every call to advance tells how many whole steps have elapsed since the
+ * previous call; the time that is left over is carried to the next call.
+ * Because the game state always evolves with the same time step, the
+ * simulation does not depend on how often (or how regularly) it is advanced.
+ */
+public class FixedTimestepClock {
+
+	/**
+	 * Maximal number of steps that are taken at once. If the simulation
+	 * falls further behind (e.g., because the program was suspended), the
+	 * remaining time is dropped.
+	 */
+	public static final int MAX_STEPS = 10;
+
+	private final long stepDuration;
+
+	// real time (System.nanoTime) that the simulation has reached
+	private long time;
+	private boolean started = false;
+
+	/**
+	 * Create a new clock that takes the given number of steps per (real)
+	 * second
+	 */
+	public FixedTimestepClock(int stepsPerSecond) {
+		if (stepsPerSecond <= 0) {
+			throw new IllegalArgumentException("Invalid step rate: "
+					+ stepsPerSecond);
+		}
+		this.stepDuration = 1000000000L / stepsPerSecond;
+	}
+
+	/**
+	 * Duration of a single step, in nanoseconds
+	 */
+	public long getStepDuration() {
+		return stepDuration;
+	}
+
+	/**
+	 * The real time (as given by System.nanoTime) that corresponds to the
+	 * current state of the simulation
+	 */
+	public synchronized long getTime() {
+		return time;
+	}
+
+	/**
+	 * Advance the clock to the given real time (as given by System.nanoTime),
+	 * and return the number of steps that the simulation has to take to catch
+	 * up with it.
+	 */
+	public synchronized int advance(long now) {
+		if (!started) {
+			started = true;
+			time = now;
+			return 0;
+		}
+		long steps = (now - time) / stepDuration;
+		if (steps <= 0) {
+			return 0;
+		}
+		if (steps > MAX_STEPS) {
+			time = now - MAX_STEPS * stepDuration;
+			steps = MAX_STEPS;
+		}
+		time += steps * stepDuration;
+		return (int) steps;
+	}
+
+	/**
+	 * The fraction of a step by which the given real time lies after the
+	 * given simulation time, restricted to [0, 1].
+	 *
+	 * Rendering the state of the simulation interpolated by this fraction
+	 * between the state at the previous step and the current one gives smooth
+	 * motion at any frame rate, one step behind the simulation.
+	 */
+	public double getInterpolation(long simulationTime, long now) {
+		double alpha = (double) (now - simulationTime) / stepDuration;
+		return Math.max(0, Math.min(1, alpha));
+	}
+}
@@ -0,0 +1,119 @@
+package worms.gui.game;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import worms.gui.TimingHistogram;
+
+/**
+ * Rolling histograms of the time spent in each phase of the frames of a play
+ * screen.
+ */
+public class PhaseTimings {
+
+	public enum Phase {
+		/**
+		 * A single simulation step of the game state
+		 */
+		EVOLVE("evolve"),
+		/**
+		 * Painting the worms and messages
+		 */
+		PAINT("paint"),
+		/**
+		 * Painting the overlay of the current input mode
+		 */
+		OVERLAY("overlay"),
+		/**
+		 * Painting a complete frame, including the work done by Swing (or by
+		 * the ActiveRenderLoop)
+		 */
+		FRAME("frame");
+
+		private final String name;
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * Duration of a window of the histograms, in nanoseconds
+	 */
+	public static final long WINDOW = 5000000000L;
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private final TimingHistogram[] histograms;
+
+	public PhaseTimings() {
+		histograms = new TimingHistogram[Phase.values().length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new TimingHistogram(WINDOW);
+		}
+	}
+
+	public TimingHistogram getHistogram(Phase phase) {
+		return histograms[phase.ordinal()];
+	}
+
+	/**
+	 * Record that the given phase started at the given time
+	 * (System.nanoTime), and ended now
+	 */
+	public void record(Phase phase, long start) {
+		long now = System.nanoTime();
+		histograms[phase.ordinal()].record(now - start, now);
+	}
+
+	/**
+	 * A line with the 50th and 99th percentile and the maximum of the given
+	 * phase, in milliseconds
+	 */
+	public String summarize(Phase phase) {
+		TimingHistogram histogram = getHistogram(phase);
+		return String.format(Locale.ROOT,
+				"%-8s p50 %7.3f  p99 %7.3f  max %7.3f ms", phase,
+				toMillis(histogram.getPercentile(50)),
+				toMillis(histogram.getPercentile(99)),
+				toMillis(histogram.getMax()));
+	}
+
+	/**
+	 * Write the number of samples, percentiles and maximum of every phase to
+	 * the file with the given name
+	 */
+	public void dump(String filename) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter(filename));
+		try {
+			writer.print("# phase\tcount");
+			for (double percentile : PERCENTILES) {
+				writer.print("\tp" + percentile + " (ms)");
+			}
+			writer.println("\tmax (ms)");
+			for (Phase phase : Phase.values()) {
+				TimingHistogram histogram = getHistogram(phase);
+				writer.print(phase + "\t" + histogram.getCount());
+				for (double percentile : PERCENTILES) {
+					writer.printf(Locale.ROOT, "\t%.3f",
+							toMillis(histogram.getPercentile(percentile)));
+				}
+				writer.printf(Locale.ROOT, "\t%.3f%n",
+						toMillis(histogram.getMax()));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1e6;
+	}
+}
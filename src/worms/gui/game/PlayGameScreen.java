@@ -1,29 +1,42 @@
 package worms.gui.game;
 
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Component;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
-import java.util.HashSet;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.Timer;
 
+import worms.gui.DirtyRegion;
 import worms.gui.GUIConstants;
 import worms.gui.GUIUtils;
 import worms.gui.GameState;
+import worms.gui.GameStateFile;
+import worms.gui.JournalPlayer;
 import worms.gui.Screen;
 import worms.gui.WormsGUI;
+import worms.gui.game.commands.Command;
 import worms.gui.game.commands.Jump;
 import worms.gui.game.commands.Move;
 import worms.gui.game.commands.Rename;
 import worms.gui.game.commands.Resize;
 import worms.gui.game.commands.Turn;
 import worms.gui.game.sprites.Sprite;
+import worms.gui.game.sprites.SpriteListener;
+import worms.gui.game.sprites.SpriteRegistry;
 import worms.gui.game.sprites.WormSprite;
 import worms.model.IFacade;
 import worms.model.Worm;
@@ -35,20 +48,24 @@ public class PlayGameScreen extends Screen {
 		@Override
 		public void mouseClicked(MouseEvent e) {
 			Point point = e.getPoint();
-			for (WormSprite sprite : getSpritesOfType(WormSprite.class)) {
-				Worm worm = sprite.getWorm();
-				double[] xy = sprite.getCenterLocation();
-				double radius = GUIUtils.meterToPixels(getFacade().getRadius(
-						worm));
-				if (GUIUtils.distance(xy[0], xy[1], point.getX(), point.getY()) <= radius) {
-					getGameState().selectWorm(worm);
-					return;
-				}
+			if (seekTo(point)) {
+				return;
+			}
+			Worm worm;
+			synchronized (getGameState()) {
+				worm = getFacade().getWormAt(getLogicalX(point.getX()),
+						getLogicalY(point.getY()));
+			}
+			if (worm != null) {
+				getGameState().selectWorm(worm);
 			}
 		}
 
 		@Override
 		public void mouseDragged(MouseEvent e) {
+			if (seekTo(e.getPoint())) {
+				return;
+			}
 			switchInputMode(new TurningMode());
 			getCurrentInputMode().mouseDragged(e);
 		}
@@ -82,6 +99,15 @@ public class PlayGameScreen extends Screen {
 			case KeyEvent.VK_N:
 				switchInputMode(new EnteringNameMode());
 				break;
+			case KeyEvent.VK_T:
+				toggleTimings();
+				break;
+			case KeyEvent.VK_D:
+				dumpTimings();
+				break;
+			case KeyEvent.VK_S:
+				saveGame();
+				break;
 			case KeyEvent.VK_PLUS:
 			case KeyEvent.VK_ADD:
 				resizeWorm(true);
@@ -154,10 +180,13 @@ public class PlayGameScreen extends Screen {
 
 		@Override
 		public void mouseDragged(MouseEvent e) {
-			double[] wormXY = getWormSprite(getSelectedWorm())
-					.getCenterLocation();
-			double currentOrientation = getFacade().getOrientation(
-					getSelectedWorm());
+			double[] wormXY;
+			double currentOrientation;
+			synchronized (getGameState()) {
+				wormXY = getWormSprite(getSelectedWorm()).getCenterLocation();
+				currentOrientation = getFacade().getOrientation(
+						getSelectedWorm());
+			}
 			this.angle = Math.PI
 					- currentOrientation
 					+ Math.atan2((e.getY() - wormXY[1]), (wormXY[0] - e.getX()));
@@ -222,24 +251,70 @@ public class PlayGameScreen extends Screen {
 		@Override
 		public void paintOverlay(Graphics2D g) {
 			super.paintOverlay(g);
-			painter.drawTurnAngleIndicator(g, getWormSprite(getSelectedWorm()),
-					getCurrentAngle());
+			synchronized (getGameState()) {
+				painter.drawTurnAngleIndicator(g,
+						getWormSprite(getSelectedWorm()), getCurrentAngle());
+			}
 		}
 	}
 
 	private final PlayGameScreenPainter painter;
 	private final GameState gameState;
 
-	private final Set<Sprite> sprites = new HashSet<Sprite>();
+	private final SpriteRegistry sprites = new SpriteRegistry();
+
+	private final TimingsOverlay timings = new TimingsOverlay();
+
+	// whether the game state evolves on its own SimulationLoop thread
+	private final boolean threaded;
+	// divides time into steps of GUIConstants.TIME_STEP
+	private final FixedTimestepClock clock = new FixedTimestepClock(
+			GUIConstants.SIMULATION_RATE);
+	// states of the worms for the painter, filled by the thread that evolves
+	// the game state
+	private final TripleBuffer<WorldSnapshot> snapshots = new TripleBuffer<WorldSnapshot>(
+			new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot());
+
+	// parts of the screen to repaint on the next frame
+	private final DirtyRegion dirtyRegion = new DirtyRegion();
+	// area of each sprite as it will be painted on the next frame
+	private final Map<Sprite, Rectangle2D> paintedBounds = new IdentityHashMap<Sprite, Rectangle2D>();
+	private Worm paintedSelection;
+	private InputMode paintedInputMode;
+	// sprites that changed during the current simulation step, and their area
+	private Set<Sprite> stepSprites = newSpriteSet();
+	private DirtyRegion stepRegion = new DirtyRegion();
+	// sprites that changed during the last simulation step, which are
+	// interpolated
+	private Set<Sprite> animatedSprites = newSpriteSet();
+	// area of the sprites that are interpolated on the next frame, and on the
+	// previous frame
+	private DirtyRegion interpolatedRegion;
+	private DirtyRegion paintedInterpolatedRegion;
+
+	// plays back a recorded game instead of taking commands, or null
+	private ReplayControl replay;
+
+	private final SpriteListener spriteListener = new SpriteListener() {
+		@Override
+		public void spriteChanged(Sprite sprite) {
+			if (sprite instanceof WormSprite) {
+				updatePaintedBounds((WormSprite) sprite);
+			} else {
+				dirtyRegion.markAll();
+			}
+		}
+	};
 
 	private static class MessageDisplay {
 		private LinkedList<String> messages = new LinkedList<String>();
 		private long currentMessageDisplayedSince;
+		private String reportedMessage;
 
 		public MessageDisplay() {
 		}
 
-		public void addMessage(String message) {
+		public synchronized void addMessage(String message) {
 			if (messages.isEmpty() || !messages.getLast().equals(message))
 				this.messages.add(message);
 		}
@@ -264,7 +339,7 @@ public class PlayGameScreen extends Screen {
 			}
 		}
 
-		public String getMessage() {
+		public synchronized String getMessage() {
 			if (isDisplayingMessage()) {
 				if (currentDisplayTime() >= GUIConstants.MESSAGE_DISPLAY_TIME) {
 					messages.remove();
@@ -275,6 +350,18 @@ public class PlayGameScreen extends Screen {
 			}
 			return currentMessage();
 		}
+
+		/**
+		 * Add the given area (where messages are displayed) to the given
+		 * region if the displayed message has changed since the last report
+		 */
+		public synchronized void reportChanges(DirtyRegion region, Rectangle2D area) {
+			String message = getMessage();
+			if (message != reportedMessage) {
+				reportedMessage = message;
+				region.add(area);
+			}
+		}
 	}
 
 	private MessageDisplay messageDisplay = new MessageDisplay();
@@ -283,30 +370,231 @@ public class PlayGameScreen extends Screen {
 		super(gui);
 		this.gameState = state;
 		this.painter = createPainter();
+		this.threaded = gui.getOptions().simulationThread;
 	}
 
 	protected InputMode createDefaultInputMode() {
 		return new DefaultInputMode();
 	}
 
+	/**
+	 * With active rendering, the screen is a canvas that is drawn by an
+	 * ActiveRenderLoop instead of by Swing.
+	 */
+	@Override
+	protected Component createContents() {
+		if (getGUI().getOptions().activeRendering) {
+			Canvas canvas = new Canvas();
+			canvas.setIgnoreRepaint(true);
+			canvas.setBackground(Color.BLACK);
+			return canvas;
+		}
+		return super.createContents();
+	}
+
 	@Override
 	protected void screenStarted() {
 		createSprites();
-		runGameLoop();
+		clock.advance(System.nanoTime());
+		publishSnapshot();
+		if (threaded) {
+			new SimulationLoop(this).start();
+		}
+		if (getPanel() instanceof Canvas) {
+			new ActiveRenderLoop(this, (Canvas) getPanel(), !threaded).start();
+		} else {
+			runGameLoop();
+		}
 	}
 
-	private void runGameLoop() {
-		final AtomicLong lastUpdateTimestamp = new AtomicLong();
+	/**
+	 * Evolve the game state by the simulation steps that have elapsed since
+	 * the last tick, each over GUIConstants.TIME_STEP, and publish the new
+	 * state of the worms to the painter.
+	 *
+	 * Called by exactly one thread: the Swing timer, the ActiveRenderLoop or
+	 * the SimulationLoop.
+	 *
+	 * @return whether the game state has changed
+	 */
+	boolean tick() {
+		boolean sought = replay != null && replay.seekIfRequested();
+		if (sought) {
+			dirtyRegion.markAll();
+		}
+		int steps = clock.advance(System.nanoTime());
+		for (int i = 0; i < steps; i++) {
+			if (i == steps - 1) {
+				// the painter interpolates between the states before and
+				// after the last step
+				synchronized (gameState) {
+					snapshots.getBackBuffer().capturePrevious(this);
+				}
+				stepSprites = newSpriteSet();
+				stepRegion = new DirtyRegion();
+			}
+			long start = System.nanoTime();
+			if (replay != null) {
+				replay.step();
+			} else {
+				gameState.evolve(GUIConstants.TIME_STEP);
+			}
+			timings.record(PhaseTimings.Phase.EVOLVE, start);
+		}
+		if (steps > 0 || sought) {
+			animatedSprites = stepSprites;
+			interpolatedRegion = stepRegion;
+			publishSnapshot();
+		}
+		return steps > 0 || sought;
+	}
+
+	/**
+	 * Play back the recorded game of the given player on this screen,
+	 * instead of taking commands (before the screen is started)
+	 */
+	public void setJournalPlayer(JournalPlayer player) {
+		this.replay = new ReplayControl(this, player);
+	}
+
+	/**
+	 * The player of the recorded game that is shown, or null if the game is
+	 * played
+	 */
+	public JournalPlayer getJournalPlayer() {
+		return replay != null ? replay.getPlayer() : null;
+	}
+
+	/**
+	 * Let the player of the recorded game jump to the given simulation step
+	 * before the next one is taken (from any thread)
+	 */
+	public void seek(long tick) {
+		if (replay != null) {
+			replay.seek(tick);
+		}
+	}
+
+	/**
+	 * Seek to the step under the given point, if it is on the timeline of
+	 * the recorded game
+	 * 
+	 * @return whether the point is on the timeline
+	 */
+	private boolean seekTo(Point point) {
+		return replay != null
+				&& replay.seekTo(point, painter.getTimelineBounds());
+	}
+
+	/**
+	 * Prepare this screen to be painted (e.g., offscreen with renderFrame),
+	 * without starting the game loop
+	 */
+	public void startOffscreen() {
+		createSprites();
+		clock.advance(System.nanoTime());
+		publishSnapshot();
+	}
+
+	/**
+	 * Publish the current state of the worms to the painter.
+	 *
+	 * The game loop does this after every simulation step; this only has to
+	 * be called after changing the game state in any other way.
+	 */
+	public void publishSnapshot() {
+		synchronized (gameState) {
+			snapshots.getBackBuffer().capture(this, clock.getTime(),
+					painter.needsAllJumpTrajectories());
+		}
+		snapshots.publish();
+	}
 
+	FixedTimestepClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * The fraction of a simulation step by which the given snapshot should
+	 * be interpolated when it is painted now
+	 */
+	double getInterpolation(WorldSnapshot snapshot) {
+		return clock.getInterpolation(snapshot.getTime(), System.nanoTime());
+	}
+
+	/**
+	 * The state of the worms that was published last (for painting)
+	 */
+	WorldSnapshot getSnapshot() {
+		return snapshots.getLatest();
+	}
+
+	/**
+	 * Draw a complete frame onto the given (cleared) graphics, for active
+	 * rendering or offscreen
+	 */
+	public void renderFrame(Graphics2D g) {
+		long start = System.nanoTime();
+		paintContents(g);
+		timings.record(PhaseTimings.Phase.FRAME, start);
+	}
+
+	@Override
+	protected void screenPainted(long start) {
+		timings.record(PhaseTimings.Phase.FRAME, start);
+	}
+
+	public PhaseTimings getTimings() {
+		return timings.getTimings();
+	}
+
+	/**
+	 * Show or hide the timings of the phases of a frame
+	 */
+	public void toggleTimings() {
+		timings.toggle();
+		dirtyRegion.markAll();
+	}
+
+	/**
+	 * Write the timings of the phases of a frame to a file in the working
+	 * directory
+	 */
+	public void dumpTimings() {
+		try {
+			String filename = timings.dump();
+			addMessage("Timings written to " + filename);
+		} catch (IOException e) {
+			addMessage("Cannot write timings: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Save the state of the game to a file in the working directory
+	 */
+	public void saveGame() {
+		String filename = "worms-save-" + System.currentTimeMillis();
+		try {
+			GameStateFile.save(getGameState(), filename);
+			addMessage("Game saved to " + filename);
+		} catch (IOException e) {
+			addMessage("Cannot save the game: " + e.getMessage());
+		}
+	}
+
+	private void runGameLoop() {
 		final Timer timer = new Timer(1000 / GUIConstants.FRAMERATE,
 				new ActionListener() {
 					@Override
 					public void actionPerformed(ActionEvent e) {
-						long now = System.currentTimeMillis();
-						long delta = now - lastUpdateTimestamp.getAndSet(now);
-						double dt = delta / 1000.0 * GUIConstants.TIME_SCALE;
-						gameState.evolve(dt);
-						repaint();
+						if (threaded) {
+							// the game state evolves on the simulation thread,
+							// which does not track what has changed
+							repaint();
+						} else {
+							tick();
+							repaintChanges();
+						}
 					}
 				});
 		Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
@@ -318,7 +606,6 @@ public class PlayGameScreen extends Screen {
 						e.getClass().getName() + ": " + e.getMessage());
 			}
 		});
-		lastUpdateTimestamp.set(System.currentTimeMillis());
 		timer.start();
 	}
 
@@ -326,9 +613,155 @@ public class PlayGameScreen extends Screen {
 		for (Worm worm : getGameState().getWorms()) {
 			WormSprite sprite = createWormSprite(worm);
 			sprites.add(sprite);
+			if (!threaded) {
+				sprite.setListener(spriteListener);
+			}
+		}
+		dirtyRegion.markAll();
+	}
+
+	/**
+	 * Put the sprites of all worms where the worms are, after the state of
+	 * the worms has been changed without them (e.g., restored)
+	 */
+	public void updateSprites() {
+		for (WormSprite sprite : getSpritesOfType(WormSprite.class)) {
+			Worm worm = sprite.getWorm();
+			sprite.setCenterLocation(getScreenX(getFacade().getX(worm)),
+					getScreenY(getFacade().getY(worm)));
+			sprite.setDirection(getFacade().getOrientation(worm));
+			sprite.setRadius(getFacade().getRadius(worm));
+			wormRenamed(worm);
+		}
+		dirtyRegion.markAll();
+	}
+
+	/**
+	 * Repaint the parts of the screen that have changed since the last
+	 * frame
+	 */
+	private void repaintChanges() {
+		if (!painter.isPartialRepaintSupported()) {
+			dirtyRegion.markAll();
+		}
+		if (paintedBounds.isEmpty()) {
+			// the painter can only tell where worms are painted after it
+			// painted the first frame
+			for (WormSprite sprite : getSpritesOfType(WormSprite.class)) {
+				updatePaintedBounds(sprite);
+			}
+		}
+		Worm selection = getSelectedWorm();
+		if (selection != paintedSelection) {
+			wormChanged(paintedSelection);
+			paintedSelection = selection;
+			wormChanged(selection);
+		}
+		InputMode inputMode = getCurrentInputMode();
+		if (inputMode != paintedInputMode
+				|| !(inputMode instanceof DefaultInputMode)) {
+			// input modes other than the default one paint an overlay
+			paintedInputMode = inputMode;
+			dirtyRegion.markAll();
+		}
+		if (timings.isVisible()) {
+			dirtyRegion.markAll();
+		}
+		messageDisplay.reportChanges(dirtyRegion, painter.getMessageBounds());
+		// sprites that changed during the last step are painted at another
+		// (interpolated) location on every frame
+		if (paintedInterpolatedRegion != null) {
+			dirtyRegion.add(paintedInterpolatedRegion);
+		}
+		if (interpolatedRegion != null) {
+			dirtyRegion.add(interpolatedRegion);
+		}
+		paintedInterpolatedRegion = interpolatedRegion;
+
+		// Swing would merge repaints of separate areas into one
+		for (Rectangle area : dirtyRegion.takeAreas(getScreenWidth(),
+				getScreenHeight())) {
+			paintImmediately(area);
+		}
+	}
+
+	/**
+	 * Mark the area of the given sprite as it was painted, and as it will be
+	 * painted in its current state, as changed
+	 */
+	private void updatePaintedBounds(WormSprite sprite) {
+		Rectangle2D oldBounds = paintedBounds.get(sprite);
+		dirtyRegion.add(oldBounds);
+		Rectangle2D bounds = painter.getPaintedBounds(sprite);
+		if (bounds != null) {
+			paintedBounds.put(sprite, bounds);
+		} else {
+			paintedBounds.remove(sprite);
+		}
+		dirtyRegion.add(bounds);
+
+		stepSprites.add(sprite);
+		painter.spriteChanged(sprite, oldBounds);
+		if (oldBounds != null) {
+			stepRegion.add(oldBounds);
+		}
+		if (bounds != null) {
+			stepRegion.add(bounds);
+		}
+	}
+
+	/**
+	 * Notify the screen that the given worm looks different, without a
+	 * change to its sprite (e.g., because it was renamed)
+	 */
+	public void wormChanged(Worm worm) {
+		if (threaded) {
+			// every frame is repainted completely
+			return;
+		}
+		WormSprite sprite = getWormSprite(worm);
+		if (sprite != null) {
+			updatePaintedBounds(sprite);
 		}
 	}
 
+	/**
+	 * Notify the screen that the name of the given worm has changed
+	 */
+	public void wormRenamed(Worm worm) {
+		if (!threaded) {
+			painter.invalidateNameLabel(worm);
+		}
+		wormChanged(worm);
+	}
+
+	/**
+	 * Whether the given sprite has changed during the last simulation step,
+	 * so that it is still moving
+	 */
+	boolean isAnimated(Sprite sprite) {
+		return animatedSprites.contains(sprite);
+	}
+
+	/**
+	 * Whether this screen tells its painter which sprites have changed,
+	 * which it does unless the game evolves on a separate thread
+	 */
+	boolean isTrackingChanges() {
+		return !threaded;
+	}
+
+	private static Set<Sprite> newSpriteSet() {
+		return Collections.newSetFromMap(new IdentityHashMap<Sprite, Boolean>());
+	}
+
+	/**
+	 * The area in which the given sprite is painted, or null if not known
+	 */
+	Rectangle2D getPaintedBounds(Sprite sprite) {
+		return paintedBounds.get(sprite);
+	}
+
 	private WormSprite createWormSprite(Worm worm) {
 		double x = getScreenX(getFacade().getX(worm));
 		double y = getScreenY(getFacade().getY(worm));
@@ -351,38 +784,29 @@ public class PlayGameScreen extends Screen {
 		return new PlayGameScreenPainter(this);
 	}
 
+	/**
+	 * An unmodifiable view on the sprites of the given type
+	 */
 	public <T extends Sprite> Set<T> getSpritesOfType(Class<T> type) {
-		Set<T> result = new HashSet<T>();
-		for (Sprite sprite : sprites) {
-			if (type.isInstance(sprite)) {
-				result.add(type.cast(sprite));
-			}
-		}
-		return result;
+		return sprites.getSpritesOfType(type);
 	}
 
 	public WormSprite getWormSprite(Worm worm) {
-		for (WormSprite sprite : getSpritesOfType(WormSprite.class)) {
-			if (worm != null && worm.equals(sprite.getWorm())) {
-				return sprite;
-			}
-		}
-		return null;
+		return sprites.getWormSprite(worm);
 	}
 
 	public void move(int nbSteps) {
 		Worm worm = getSelectedWorm();
 
 		if (worm != null) {
-			getGameState().enqueueCommand(
-					new Move(getFacade(), worm, nbSteps, this));
+			enqueueCommand(new Move(getFacade(), worm, nbSteps, this));
 		}
 	}
 
 	public void jump() {
 		Worm worm = getSelectedWorm();
 		if (worm != null) {
-			getGameState().enqueueCommand(new Jump(getFacade(), worm, this));
+			enqueueCommand(new Jump(getFacade(), worm, this));
 		}
 
 	}
@@ -392,8 +816,7 @@ public class PlayGameScreen extends Screen {
 		angle = GUIUtils.restrictAngle(angle, -Math.PI);
 
 		if (worm != null) {
-			getGameState().enqueueCommand(
-					new Turn(getFacade(), worm, angle, this));
+			enqueueCommand(new Turn(getFacade(), worm, angle, this));
 		}
 	}
 
@@ -401,8 +824,7 @@ public class PlayGameScreen extends Screen {
 		Worm worm = getSelectedWorm();
 
 		if (worm != null) {
-			getGameState().enqueueCommand(
-					new Rename(getFacade(), worm, newName, this));
+			enqueueCommand(new Rename(getFacade(), worm, newName, this));
 		}
 	}
 
@@ -412,8 +834,20 @@ public class PlayGameScreen extends Screen {
 		if (worm != null) {
 			double factor = 1.0 + (makeLarger ? GUIConstants.RESIZE_FACTOR
 					: -GUIConstants.RESIZE_FACTOR);
-			getGameState().enqueueCommand(
-					new Resize(getFacade(), worm, factor, this));
+			enqueueCommand(new Resize(getFacade(), worm, factor, this));
+		}
+	}
+
+	/**
+	 * Enqueue the given command, unless the game cannot keep up with the
+	 * commands that were given before, or a recorded game is shown
+	 */
+	private void enqueueCommand(Command command) {
+		if (replay != null) {
+			addMessage("Cannot give commands while a recorded game is shown");
+		} else if (getGameState().isSaturated()
+				|| !getGameState().enqueueCommand(command)) {
+			addMessage("Too many commands, please wait");
 		}
 	}
 
@@ -423,15 +857,29 @@ public class PlayGameScreen extends Screen {
 
 	@Override
 	protected void paintScreen(Graphics2D g) {
+		long start = System.nanoTime();
 		painter.paint(g);
 		String message = messageDisplay.getMessage();
 		if (message != null) {
 			painter.paintMessage(g, message);
 		}
+		timings.record(PhaseTimings.Phase.PAINT, start);
+		timings.paint(g, painter);
+	}
+
+	@Override
+	protected void paintOverlay(Graphics2D g) {
+		long start = System.nanoTime();
+		super.paintOverlay(g);
+		timings.record(PhaseTimings.Phase.OVERLAY, start);
 	}
 
 	public void addMessage(String message) {
-		messageDisplay.addMessage(message);
+		// commands that are executed again while seeking do not show their
+		// messages
+		if (replay == null || !replay.isSeeking()) {
+			messageDisplay.addMessage(message);
+		}
 	}
 
 	public static PlayGameScreen create(WormsGUI gui, GameState gameState,
@@ -1,58 +1,198 @@
 package worms.gui.game;
 
 import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
 import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.Locale;
 
+import worms.gui.GUIConstants;
 import worms.gui.GUIUtils;
-import worms.gui.game.sprites.WormSprite;
-import worms.model.ModelException;
+import worms.gui.JournalPlayer;
+import worms.gui.TimingHistogram;
+import worms.gui.game.commands.CommandMetrics;
+import worms.gui.game.commands.JournalReader;
+import worms.model.JumpTrajectory;
 
 public class PlayGameScreenDebugPainter extends PlayGameScreenPainter {
 
 	private static final int LOCATION_MARKER_SIZE = 4;
+	private static final int TIMELINE_MARGIN = 20;
+	private static final int TIMELINE_HEIGHT = 24;
 
 	public PlayGameScreenDebugPainter(PlayGameScreen screen) {
 		super(screen);
 	}
 
+	/**
+	 * Markers are drawn at the location of the worms and along all jumps,
+	 * away from the sprites; the debug screen is always repainted completely.
+	 */
+	@Override
+	public boolean isPartialRepaintSupported() {
+		return false;
+	}
+
+	@Override
+	public boolean needsAllJumpTrajectories() {
+		return true;
+	}
+
+	@Override
+	public void paint(Graphics2D g) {
+		super.paint(g);
+		paintCommandMetrics(g, getState().getCommandMetrics());
+		JournalPlayer player = getScreen().getJournalPlayer();
+		if (player != null) {
+			paintTimeline(g, player);
+		}
+	}
+
+	/**
+	 * Below the message bar, across the screen, when a recorded game is shown
+	 */
+	@Override
+	public Rectangle2D getTimelineBounds() {
+		if (getScreen().getJournalPlayer() == null) {
+			return null;
+		}
+		return new Rectangle2D.Double(TIMELINE_MARGIN, MESSAGE_BAR_HEIGHT,
+				getScreen().getScreenWidth() - 2 * TIMELINE_MARGIN,
+				TIMELINE_HEIGHT);
+	}
+
+	/**
+	 * Show the simulation steps of the recorded game as a timeline, with a
+	 * tick mark for every keyframe and a marker at the current step. Clicking
+	 * or dragging on the timeline seeks to that step.
+	 */
+	protected void paintTimeline(Graphics2D g, JournalPlayer player) {
+		JournalReader journal = player.getJournal();
+		Rectangle2D bounds = getTimelineBounds();
+		int x = (int) bounds.getX();
+		int y = (int) bounds.getY();
+		int width = (int) bounds.getWidth();
+		int height = (int) bounds.getHeight();
+		long lastTick = Math.max(1, journal.getLastTick());
+
+		g.setColor(TIMINGS_BACKGROUND_COLOR);
+		g.fillRect(x, y, width, height);
+		g.setColor(JUMP_MARKER_COLOR);
+		for (int i = 0; i < journal.getNbKeyframes(); i++) {
+			int keyframeX = x
+					+ (int) (journal.getKeyframeTick(i) * width / lastTick);
+			g.drawLine(keyframeX, y + height - 6, keyframeX, y + height);
+		}
+		long tick = player.getTick();
+		int tickX = x + (int) (Math.min(tick, lastTick) * width / lastTick);
+		g.setColor(TIMINGS_TEXT_COLOR);
+		g.fillRect(tickX - 1, y, 3, height);
+		g.setFont(TIMINGS_FONT);
+		g.drawString(
+				"step " + tick + " / " + journal.getLastTick() + "  ("
+						+ formatTime(tick) + " / "
+						+ formatTime(journal.getLastTick()) + ")", x + 4, y + height - 8);
+	}
+
+	/**
+	 * The real time after the given number of simulation steps, as minutes
+	 * and seconds
+	 */
+	private static String formatTime(long tick) {
+		long seconds = tick / GUIConstants.SIMULATION_RATE;
+		return String.format(Locale.ROOT, "%d:%02d", seconds / 60,
+				seconds % 60);
+	}
+
+	/**
+	 * Show the counters of the command queue, the wait and execution times
+	 * of commands, and the recent depth of the queue (as a bar graph)
+	 */
+	protected void paintCommandMetrics(Graphics2D g, CommandMetrics metrics) {
+		TimingHistogram wait = metrics.getWaitTimes();
+		TimingHistogram execution = metrics.getExecutionTimes();
+		String[] lines = {
+				String.format(Locale.ROOT,
+						"commands %d enqueued, %d coalesced, %d started, "
+								+ "%d cancelled", metrics.getNbEnqueued(),
+						metrics.getNbCoalesced(), metrics.getNbStarted(),
+						metrics.getNbCancelled()),
+				String.format(Locale.ROOT, "queue    %d (max %d), %d dropped",
+						metrics.getQueueDepth(), metrics.getMaxQueueDepth(),
+						metrics.getNbDropped()),
+				String.format(Locale.ROOT,
+						"wait     p50 %8.1f  p99 %8.1f  max %8.1f ms",
+						wait.getPercentile(50) / 1e6,
+						wait.getPercentile(99) / 1e6, wait.getMax() / 1e6),
+				String.format(Locale.ROOT,
+						"execute  p50 %8.1f  p99 %8.1f  max %8.1f ms",
+						execution.getPercentile(50) / 1e6,
+						execution.getPercentile(99) / 1e6,
+						execution.getMax() / 1e6) };
+
+		g.setFont(TIMINGS_FONT);
+		FontMetrics fontMetrics = g.getFontMetrics();
+		int lineHeight = fontMetrics.getHeight();
+		int width = 66 * fontMetrics.charWidth('0');
+		int graphHeight = 40;
+		int height = lines.length * lineHeight + graphHeight + 12;
+		int x = getScreen().getScreenWidth() - width;
+		int y = getScreen().getScreenHeight() - height;
+		g.setColor(TIMINGS_BACKGROUND_COLOR);
+		g.fillRect(x, y, width, height);
+		g.setColor(TIMINGS_TEXT_COLOR);
+		for (String line : lines) {
+			y += lineHeight;
+			g.drawString(line, x + 4, y);
+		}
+
+		int[] depths = metrics.getDepthHistory();
+		int max = 1;
+		for (int depth : depths) {
+			max = Math.max(max, depth);
+		}
+		int bottom = y + graphHeight + 8;
+		double barWidth = (double) (width - 8) / CommandMetrics.DEPTH_HISTORY;
+		for (int i = 0; i < depths.length; i++) {
+			int barHeight = depths[i] * graphHeight / max;
+			g.fillRect((int) (x + 4 + i * barWidth), bottom - barHeight,
+					Math.max(1, (int) barWidth), barHeight);
+		}
+	}
+
 	@Override
-	protected void paintWorm(WormSprite sprite) {
-		super.paintWorm(sprite);
+	protected void paintWorm(int worm) {
+		super.paintWorm(worm);
 
-		if (getState().getSelectedWorm() != sprite.getWorm()) {
-			drawOutline(sprite);
-			drawJumpMarkers(sprite); // also draw for other worms
+		if (!snapshot.isSelected(worm)) {
+			drawOutline(worm);
+			drawJumpMarkers(worm); // also draw for other worms
 		}
 
-		drawDirectionLine(sprite);
+		drawDirectionLine(worm);
 
-		drawLocationMarker(sprite);
+		drawLocationMarker(worm);
 
 	}
 
 	@Override
-	protected void drawJumpMarkers(WormSprite sprite) {
-		try {
-			double time = getFacade().getJumpTime(sprite.getWorm());
-			double[] prevXY = getFacade().getJumpStep(sprite.getWorm(), 0);
-			int n = 1 + (int) (time / JUMP_MARKER_TIME_DISTANCE * 2);
-			for (int i = 1; i <= n; i++) {
-				double dt = i * time / n;
-				double[] xy = getFacade().getJumpStep(sprite.getWorm(), dt);
-				if (xy != null && prevXY != null) {
-					double jumpX = getScreenX(xy[0]);
-					double jumpY = getScreenY(xy[1]);
-					graphics.setColor(JUMP_MARKER_COLOR);
-					graphics.drawLine((int) getScreenX(prevXY[0]),
-							(int) getScreenY(prevXY[1]), (int) jumpX,
-							(int) jumpY);
-					prevXY = xy;
-					drawCrossMarker(jumpX, jumpY, JUMP_MARKER_SIZE,
-							JUMP_MARKER_COLOR);
-				}
-			}
-		} catch (ModelException e) {
+	protected void drawJumpMarkers(int worm) {
+		JumpTrajectory trajectory = snapshot.getJumpTrajectory(worm);
+		if (trajectory == null) {
 			// cannot jump; draw nothing
+			return;
+		}
+		double time = trajectory.getDuration();
+		int n = 1 + (int) (time / JUMP_MARKER_TIME_DISTANCE * 2);
+		double[] xy = sampleJumpTrajectory(trajectory, 0, time / n, n + 1);
+		for (int i = 1; i <= n; i++) {
+			double jumpX = getScreenX(xy[2 * i]);
+			double jumpY = getScreenY(xy[2 * i + 1]);
+			graphics.setColor(JUMP_MARKER_COLOR);
+			graphics.drawLine((int) getScreenX(xy[2 * i - 2]),
+					(int) getScreenY(xy[2 * i - 1]), (int) jumpX, (int) jumpY);
+			drawCrossMarker(jumpX, jumpY, JUMP_MARKER_SIZE, JUMP_MARKER_COLOR);
 		}
 	}
 
@@ -60,18 +200,18 @@ public class PlayGameScreenDebugPainter extends PlayGameScreenPainter {
 	 * Draw a marker at the current location of the worm (which is not
 	 * necessarily equal to the sprite's location)
 	 */
-	protected void drawLocationMarker(WormSprite worm) {
-		double x = getFacade().getX(worm.getWorm());
-		double y = getFacade().getY(worm.getWorm());
+	protected void drawLocationMarker(int worm) {
+		double x = snapshot.getLocationX(worm);
+		double y = snapshot.getLocationY(worm);
 
 		drawCrossMarker(getScreenX(x), getScreenY(y), LOCATION_MARKER_SIZE,
 				Color.YELLOW);
 	}
 
-	protected void drawOutline(WormSprite sprite) {
-		double r = getFacade().getRadius(sprite.getWorm());
-		double x = sprite.getCenterX();
-		double y = sprite.getCenterY();
+	protected void drawOutline(int worm) {
+		double r = snapshot.getRadius(worm);
+		double x = snapshot.getCenterX(worm);
+		double y = snapshot.getCenterY(worm);
 
 		graphics.setColor(Color.YELLOW);
 		Shape circle = GUIUtils.circleAt(x, y, GUIUtils.meterToPixels(r));
@@ -79,12 +219,11 @@ public class PlayGameScreenDebugPainter extends PlayGameScreenPainter {
 
 	}
 
-	protected void drawDirectionLine(WormSprite sprite) {
-		double r = GUIUtils.meterToPixels(getFacade().getRadius(
-				sprite.getWorm()));
-		double x = sprite.getCenterX();
-		double y = sprite.getCenterY();
-		double direction = getFacade().getOrientation(sprite.getWorm());
+	protected void drawDirectionLine(int worm) {
+		double r = GUIUtils.meterToPixels(snapshot.getRadius(worm));
+		double x = snapshot.getCenterX(worm);
+		double y = snapshot.getCenterY(worm);
+		double direction = snapshot.getOrientation(worm);
 
 		graphics.setColor(Color.YELLOW);
 		graphics.drawLine((int) x, (int) y,
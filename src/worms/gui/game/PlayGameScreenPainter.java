@@ -2,17 +2,27 @@ package worms.gui.game;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 
+import worms.gui.DirtyRegion;
 import worms.gui.GUIUtils;
 import worms.gui.GameState;
 import worms.gui.game.sprites.WormSprite;
 import worms.model.IFacade;
-import worms.model.ModelException;
+import worms.model.JumpTrajectory;
+import worms.model.Worm;
 
 public class PlayGameScreenPainter {
 
@@ -48,14 +58,38 @@ public class PlayGameScreenPainter {
 			0x60a7130e, true);
 	protected static final Color MESSAGE_TEXT_COLOR = Color.WHITE;
 	protected static final Color JUMP_MARKER_COLOR = Color.GRAY;
+	protected static final Color TIMINGS_BACKGROUND_COLOR = new Color(
+			0xa0000000, true);
+	protected static final Color TIMINGS_TEXT_COLOR = Color.GREEN;
+	protected static final Font TIMINGS_FONT = new Font(Font.MONOSPACED,
+			Font.PLAIN, 12);
+	protected static final Font MESSAGE_FONT = new Font(Font.SANS_SERIF,
+			Font.PLAIN, 20);
 
 	protected static final int JUMP_MARKER_SIZE = 1;
 	protected static final double JUMP_MARKER_TIME_DISTANCE = 0.1; // worm-seconds
 	protected static final double DIRECTION_INDICATOR_SIZE = 10;
+	protected static final int MESSAGE_BAR_HEIGHT = 120;
 
 	protected Graphics2D graphics;
+	// the snapshot that is being painted
+	protected WorldSnapshot snapshot;
 	private final PlayGameScreen screen;
 
+	private double[] jumpSamples = new double[0];
+
+	// metrics of the font in which names are drawn, known after the first paint
+	private FontMetrics nameMetrics;
+	private final Map<Worm, NameLabel> nameLabels = new IdentityHashMap<Worm, NameLabel>();
+
+	// the screen with the worms that are neither animated nor selected, when
+	// only the changed parts of the screen are repainted
+	private BufferedImage background;
+	private final Set<WormSprite> backgroundSprites = Collections
+			.newSetFromMap(new IdentityHashMap<WormSprite, Boolean>());
+	// parts of the background that have to be painted again
+	private final DirtyRegion staleBackground = new DirtyRegion();
+
 	public PlayGameScreenPainter(PlayGameScreen screen) {
 		this.screen = screen;
 	}
@@ -72,17 +106,204 @@ public class PlayGameScreenPainter {
 		return getState().getFacade();
 	}
 
+	/**
+	 * Paint the worms of the latest snapshot of the screen
+	 */
 	public void paint(Graphics2D g) {
+		WorldSnapshot snapshot = getScreen().getSnapshot();
+		snapshot.setInterpolation(getScreen().getInterpolation(snapshot));
+		paint(g, snapshot);
+	}
+
+	public void paint(Graphics2D g, WorldSnapshot snapshot) {
+		this.snapshot = snapshot;
+		if (nameMetrics == null) {
+			nameMetrics = g.getFontMetrics();
+		}
+		Rectangle clip = isPartialRepaintSupported() ? g.getClipBounds()
+				: null;
+
+		if (clip != null && getScreen().isTrackingChanges()) {
+			paintBackground(g);
+			paintWorms(g, clip, Layer.FOREGROUND);
+		} else {
+			paintWorms(g, clip, Layer.ALL);
+		}
+
+		this.snapshot = null;
+	}
+
+	/**
+	 * The worms that paintWorms paints
+	 */
+	private enum Layer {
+		ALL, BACKGROUND, FOREGROUND
+	}
+
+	/**
+	 * Paint the worms of the snapshot in the given layer whose painted bounds
+	 * intersect the given clip (if it is not null)
+	 */
+	private void paintWorms(Graphics2D g, Rectangle clip, Layer layer) {
 		this.graphics = g;
+		for (int worm = 0; worm < snapshot.size(); worm++) {
+			WormSprite sprite = snapshot.getSprite(worm);
+			if (layer != Layer.ALL
+					&& backgroundSprites.contains(sprite) != (layer == Layer.BACKGROUND)) {
+				continue;
+			}
+			if (clip != null) {
+				// painted bounds are those of the sprite after the last step
+				Rectangle2D bounds = getScreen().getPaintedBounds(sprite);
+				double dx = snapshot.getInterpolationOffsetX(worm);
+				double dy = snapshot.getInterpolationOffsetY(worm);
+				if (bounds != null
+						&& !bounds.intersects(clip.getX() - dx, clip.getY()
+								- dy, clip.getWidth(), clip.getHeight())) {
+					continue;
+				}
+			}
+			if (snapshot.isSelected(worm)) {
+				drawSelection(worm);
+			}
+			paintWorm(worm);
+		}
+		this.graphics = null;
+	}
 
-		for (WormSprite sprite : getScreen().getSpritesOfType(WormSprite.class)) {
-			if (sprite.getWorm() == getState().getSelectedWorm()) {
-				drawSelection(sprite);
+	/**
+	 * Draw the cached background, with all worms that are not animated nor
+	 * selected, onto the given graphics. Worms that stopped changing are
+	 * first moved into the background, and the parts of the background that
+	 * are out of date are painted again.
+	 */
+	private void paintBackground(Graphics2D g) {
+		int width = Math.max(1, getScreen().getScreenWidth());
+		int height = Math.max(1, getScreen().getScreenHeight());
+		if (background == null || background.getWidth() != width
+				|| background.getHeight() != height) {
+			background = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_RGB);
+			backgroundSprites.clear();
+			staleBackground.markAll();
+		}
+		for (int worm = 0; worm < snapshot.size(); worm++) {
+			WormSprite sprite = snapshot.getSprite(worm);
+			if (!snapshot.isSelected(worm)
+					&& !getScreen().isAnimated(sprite)
+					&& backgroundSprites.add(sprite)) {
+				staleBackground.add(getScreen().getPaintedBounds(sprite));
 			}
-			paintWorm(sprite);
 		}
+		if (!staleBackground.isEmpty()) {
+			Graphics2D backgroundGraphics = background.createGraphics();
+			try {
+				backgroundGraphics.setRenderingHints(g.getRenderingHints());
+				backgroundGraphics.setFont(g.getFont());
+				for (Rectangle area : staleBackground.takeAreas(width, height)) {
+					backgroundGraphics.setClip(area);
+					backgroundGraphics.setColor(getScreen().getPanel()
+							.getBackground());
+					backgroundGraphics.fill(area);
+					paintWorms(backgroundGraphics, area, Layer.BACKGROUND);
+				}
+			} finally {
+				backgroundGraphics.dispose();
+			}
+		}
+		g.drawImage(background, 0, 0, null);
+	}
 
-		this.graphics = null;
+	/**
+	 * Take the given sprite, which looks different now, out of the
+	 * background, in which it was painted in the given area
+	 */
+	void spriteChanged(WormSprite sprite, Rectangle2D oldBounds) {
+		if (backgroundSprites.remove(sprite)) {
+			staleBackground.add(oldBounds);
+		}
+	}
+
+	/**
+	 * Whether the snapshots that are painted need the jump trajectory of
+	 * every worm, instead of only that of the selected worm
+	 */
+	public boolean needsAllJumpTrajectories() {
+		return false;
+	}
+
+	/**
+	 * Whether paint only draws what it draws outside of the painted bounds of
+	 * the worms and the message bar when the whole screen has changed.
+	 * 
+	 * If not, the screen has to be repainted completely every frame.
+	 */
+	public boolean isPartialRepaintSupported() {
+		return true;
+	}
+
+	/**
+	 * The area of the screen that paintWorm may draw onto for the given
+	 * sprite, in its current state, or null if that area is not known yet.
+	 */
+	public Rectangle2D getPaintedBounds(WormSprite sprite) {
+		if (nameMetrics == null) {
+			return null;
+		}
+		Worm worm = sprite.getWorm();
+		double x = sprite.getCenterX();
+		double y = sprite.getCenterY();
+		double radius = GUIUtils.meterToPixels(getFacade().getRadius(worm));
+
+		// body, selection and direction indicator
+		double r = radius + DIRECTION_INDICATOR_SIZE;
+		Rectangle2D bounds = new Rectangle2D.Double(x - r, y - r, 2 * r, 2 * r);
+		// image
+		double width = sprite.getWidth(null);
+		double height = sprite.getHeight(null);
+		bounds.add(new Rectangle2D.Double(x - width / 2, y - height / 2, width,
+				height));
+		// name bar
+		NameLabel label = getNameLabel(worm, getFacade().getName(worm));
+		double nameWidth = label.image.getWidth();
+		double nameHeight = label.image.getHeight();
+		bounds.add(new Rectangle2D.Double(x - nameWidth / 2, y - radius
+				- TEXT_BAR_V_OFFSET - nameHeight, nameWidth, nameHeight));
+		// action bar
+		bounds.add(new Rectangle2D.Double(x - ACTION_BAR_WIDTH / 2, y + radius,
+				ACTION_BAR_WIDTH, ACTION_BAR_HEIGHT));
+		// jump markers
+		if (worm == getState().getSelectedWorm()) {
+			JumpTrajectory trajectory = getFacade().findJumpTrajectory(worm);
+			if (trajectory != null) {
+				double time = trajectory.getDuration();
+				// start, top and end of the jump
+				double[] xy = sampleJumpTrajectory(trajectory, 0, time / 2, 3);
+				for (int i = 0; i < 3; i++) {
+					bounds.add(new Rectangle2D.Double(getScreenX(xy[2 * i])
+							- JUMP_MARKER_SIZE, getScreenY(xy[2 * i + 1])
+							- JUMP_MARKER_SIZE, 2 * JUMP_MARKER_SIZE,
+							2 * JUMP_MARKER_SIZE));
+				}
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * The area of the screen onto which messages are drawn
+	 */
+	public Rectangle2D getMessageBounds() {
+		return new Rectangle2D.Double(0, 0, getScreen().getScreenWidth(),
+				MESSAGE_BAR_HEIGHT);
+	}
+
+	/**
+	 * The area of the screen onto which the timeline of a recorded game is
+	 * drawn, or null if there is none
+	 */
+	public Rectangle2D getTimelineBounds() {
+		return null;
 	}
 
 	protected double getScreenX(double x) {
@@ -93,58 +314,106 @@ public class PlayGameScreenPainter {
 		return getScreen().getScreenY(y);
 	}
 
-	protected void paintWorm(WormSprite sprite) {
+	/**
+	 * Paint the worm with the given index in the snapshot
+	 */
+	protected void paintWorm(int worm) {
 
-		sprite.draw(graphics);
+		drawImage(worm);
 
-		drawName(sprite);
+		drawName(worm);
 
-		drawActionBar(sprite);
+		drawActionBar(worm);
 
-		if (getState().getSelectedWorm() == sprite.getWorm()) {
-			drawDirectionIndicator(sprite);
-			drawJumpMarkers(sprite);
+		if (snapshot.isSelected(worm)) {
+			drawDirectionIndicator(worm);
+			drawJumpMarkers(worm);
 		}
 	}
 
-	protected void drawName(WormSprite sprite) {
-		final double radius = GUIUtils.meterToPixels(getFacade().getRadius(
-				sprite.getWorm()));
-		String name = getFacade().getName(sprite.getWorm());
+	protected void drawImage(int worm) {
+		double width = snapshot.getImageWidth(worm);
+		double height = snapshot.getImageHeight(worm);
+		int x = (int) (snapshot.getCenterX(worm) - width / 2);
+		int y = (int) (snapshot.getCenterY(worm) - height / 2);
+		graphics.drawImage(snapshot.getImage(worm), x, y, (int) width,
+				(int) height, null);
+	}
 
-		if (name == null) {
-			name = "(null)";
-		}
+	protected void drawName(int worm) {
+		final double radius = GUIUtils.meterToPixels(snapshot.getRadius(worm));
+		NameLabel label = getNameLabel(snapshot.getWorm(worm),
+				snapshot.getName(worm));
 
-		Rectangle2D bounds = graphics.getFontMetrics().getStringBounds(name,
-				graphics);
-		final double stringWidth = bounds.getWidth();
-		final double stringHeight = bounds.getHeight();
+		final double x = snapshot.getCenterX(worm) - label.stringWidth / 2;
+		final double y = snapshot.getCenterY(worm) - radius - TEXT_BAR_V_OFFSET;
 
-		final double x = sprite.getCenterX() - stringWidth / 2;
-		final double y = sprite.getCenterY() - radius - TEXT_BAR_V_OFFSET;
+		graphics.drawImage(label.image,
+				(int) Math.round(x - TEXT_BAR_H_MARGIN),
+				(int) Math.round(y - label.stringHeight - TEXT_BAR_V_MARGIN),
+				null);
+	}
 
-		RoundRectangle2D nameBarFill = new RoundRectangle2D.Double(x
-				- TEXT_BAR_H_MARGIN, y - stringHeight - TEXT_BAR_V_MARGIN,
-				stringWidth + 2 * TEXT_BAR_H_MARGIN, stringHeight + 2
-						* TEXT_BAR_V_MARGIN, 5, 5);
-		graphics.setColor(NAME_BAR_BACKGROUND);
-		graphics.fill(nameBarFill);
+	/**
+	 * A pre-rendered name bar
+	 */
+	private static class NameLabel {
+		private final String name;
+		private final double stringWidth;
+		private final double stringHeight;
+		private final BufferedImage image;
+
+		public NameLabel(String name, FontMetrics metrics) {
+			this.name = name;
+			String text = (name == null) ? "(null)" : name;
+			Rectangle2D bounds = metrics.getStringBounds(text, null);
+			this.stringWidth = bounds.getWidth();
+			this.stringHeight = bounds.getHeight();
+
+			double width = stringWidth + 2 * TEXT_BAR_H_MARGIN;
+			double height = stringHeight + 2 * TEXT_BAR_V_MARGIN;
+			this.image = new BufferedImage((int) Math.ceil(width),
+					(int) Math.ceil(height), BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = image.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setColor(NAME_BAR_BACKGROUND);
+			g.fill(new RoundRectangle2D.Double(0, 0, width, height, 5, 5));
+			g.setFont(metrics.getFont());
+			g.setColor(NAME_BAR_TEXT);
+			g.drawString(text, (float) TEXT_BAR_H_MARGIN,
+					(float) (stringHeight + TEXT_BAR_V_MARGIN));
+			g.dispose();
+		}
+	}
 
-		graphics.setColor(NAME_BAR_TEXT);
+	/**
+	 * The name bar of the given worm with the given name, rendered when it is
+	 * first needed and whenever the name of the worm has changed.
+	 */
+	private NameLabel getNameLabel(Worm worm, String name) {
+		NameLabel label = nameLabels.get(worm);
+		if (label == null || label.name != name) {
+			label = new NameLabel(name, nameMetrics);
+			nameLabels.put(worm, label);
+		}
+		return label;
+	}
 
-		graphics.drawString(name, (float) x, (float) (y));
+	/**
+	 * Forget the name bar of the given worm (e.g., after it was renamed)
+	 */
+	public void invalidateNameLabel(Worm worm) {
+		nameLabels.remove(worm);
 	}
 
-	protected void drawActionBar(WormSprite sprite) {
-		double x = sprite.getCenterX();
-		double y = sprite.getCenterY();
-		double radius = GUIUtils.meterToPixels(getFacade().getRadius(
-				sprite.getWorm()));
+	protected void drawActionBar(int worm) {
+		double x = snapshot.getCenterX(worm);
+		double y = snapshot.getCenterY(worm);
+		double radius = GUIUtils.meterToPixels(snapshot.getRadius(worm));
 
-		double actionPoints = getFacade().getActionPoints(sprite.getWorm());
-		double maxActionPoints = getFacade().getMaxActionPoints(
-				sprite.getWorm());
+		double actionPoints = snapshot.getActionPoints(worm);
+		double maxActionPoints = snapshot.getMaxActionPoints(worm);
 
 		RoundRectangle2D actionBarFill = new RoundRectangle2D.Double(x
 				- ACTION_BAR_WIDTH / 2, y + radius, actionPoints
@@ -159,10 +428,10 @@ public class PlayGameScreenPainter {
 		graphics.draw(actionBar);
 	}
 
-	protected void drawSelection(WormSprite sprite) {
-		double x = sprite.getCenterX();
-		double y = sprite.getCenterY();
-		double r = getFacade().getRadius(sprite.getWorm());
+	protected void drawSelection(int worm) {
+		double x = snapshot.getCenterX(worm);
+		double y = snapshot.getCenterY(worm);
+		double r = snapshot.getRadius(worm);
 
 		graphics.setColor(SELECTION_FILL_COLOR);
 
@@ -170,14 +439,13 @@ public class PlayGameScreenPainter {
 		graphics.fill(circle);
 	}
 
-	protected void drawDirectionIndicator(WormSprite sprite) {
-		double x = sprite.getCenterX();
-		double y = sprite.getCenterY();
-		double r = GUIUtils.meterToPixels(getFacade().getRadius(
-				sprite.getWorm()));
+	protected void drawDirectionIndicator(int worm) {
+		double x = snapshot.getCenterX(worm);
+		double y = snapshot.getCenterY(worm);
+		double r = GUIUtils.meterToPixels(snapshot.getRadius(worm));
 		r += DIRECTION_INDICATOR_SIZE / 2;
-		double direction = GUIUtils.restrictDirection(getFacade()
-				.getOrientation(sprite.getWorm()));
+		double direction = GUIUtils.restrictDirection(snapshot
+				.getOrientation(worm));
 
 		graphics.setColor(DIRECTION_MARKER_COLOR);
 
@@ -211,23 +479,35 @@ public class PlayGameScreenPainter {
 		graphics.fill(directionIndicator);
 	}
 
-	protected void drawJumpMarkers(WormSprite sprite) {
-		try {
-			double time = getFacade().getJumpTime(sprite.getWorm());
-			int n = 1 + (int) (time / JUMP_MARKER_TIME_DISTANCE);
-			for (int i = 1; i <= n; i++) {
-				double dt = i * time / n;
-				double[] xy = getFacade().getJumpStep(sprite.getWorm(), dt);
-				if (xy != null) {
-					double jumpX = getScreenX(xy[0]);
-					double jumpY = getScreenY(xy[1]);
-					drawCrossMarker(jumpX, jumpY, JUMP_MARKER_SIZE,
-							JUMP_MARKER_COLOR);
-				}
-			}
-		} catch (ModelException e) {
+	protected void drawJumpMarkers(int worm) {
+		JumpTrajectory trajectory = snapshot.getJumpTrajectory(worm);
+		if (trajectory == null) {
 			// cannot jump; draw nothing
+			return;
+		}
+		double time = trajectory.getDuration();
+		int n = 1 + (int) (time / JUMP_MARKER_TIME_DISTANCE);
+		double[] xy = sampleJumpTrajectory(trajectory, time / n, time / n, n);
+		for (int i = 0; i < n; i++) {
+			double jumpX = getScreenX(xy[2 * i]);
+			double jumpY = getScreenY(xy[2 * i + 1]);
+			drawCrossMarker(jumpX, jumpY, JUMP_MARKER_SIZE, JUMP_MARKER_COLOR);
+		}
+	}
+
+	/**
+	 * Sample n locations on the given trajectory, at times t0, t0 + dt, ...
+	 * 
+	 * The locations are stored as consecutive (x, y) pairs in an array that
+	 * is reused for every call; it is only valid until the next call.
+	 */
+	protected double[] sampleJumpTrajectory(JumpTrajectory trajectory,
+			double t0, double dt, int n) {
+		if (jumpSamples.length < 2 * n) {
+			jumpSamples = new double[2 * n];
 		}
+		trajectory.sampleRange(t0, dt, n, jumpSamples);
+		return jumpSamples;
 	}
 
 	protected void drawCrossMarker(double x, double y, int size, Color color) {
@@ -238,17 +518,33 @@ public class PlayGameScreenPainter {
 
 	void paintNameEntry(Graphics2D g, String enteredName) {
 		g.setColor(RENAME_BACKGROUND_COLOR);
-		g.fillRect(0, 0, getScreen().getScreenWidth(), 120);
-		g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 20));
+		g.fillRect(0, 0, getScreen().getScreenWidth(), MESSAGE_BAR_HEIGHT);
+		g.setFont(MESSAGE_FONT);
 		g.setColor(RENAME_TEXT_COLOR);
 		GUIUtils.drawCenteredString(g, "Enter new name for worm: "
 				+ enteredName + "\u2502", getScreen().getScreenWidth(), 100);
 	}
 
+	void paintTimings(Graphics2D g, PhaseTimings timings) {
+		g.setFont(TIMINGS_FONT);
+		FontMetrics metrics = g.getFontMetrics();
+		PhaseTimings.Phase[] phases = PhaseTimings.Phase.values();
+		int lineHeight = metrics.getHeight();
+		int height = phases.length * lineHeight + 8;
+		int y = getScreen().getScreenHeight() - height;
+		g.setColor(TIMINGS_BACKGROUND_COLOR);
+		g.fillRect(0, y, 60 * metrics.charWidth('0'), height);
+		g.setColor(TIMINGS_TEXT_COLOR);
+		for (PhaseTimings.Phase phase : phases) {
+			y += lineHeight;
+			g.drawString(timings.summarize(phase), 4, y);
+		}
+	}
+
 	void paintMessage(Graphics2D g, String message) {
 		g.setColor(MESSAGE_BACKGROUND_COLOR);
-		g.fillRect(0, 0, getScreen().getScreenWidth(), 120);
-		g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 20));
+		g.fillRect(0, 0, getScreen().getScreenWidth(), MESSAGE_BAR_HEIGHT);
+		g.setFont(MESSAGE_FONT);
 		g.setColor(MESSAGE_TEXT_COLOR);
 		GUIUtils.drawCenteredString(g, message, getScreen().getScreenWidth(),
 				100);
@@ -0,0 +1,95 @@
+package worms.gui.game;
+
+import java.awt.Point;
+import java.awt.geom.Rectangle2D;
+
+import worms.gui.JournalPlayer;
+
+/**
+ * Plays back a recorded game on a play screen, instead of the commands that
+ * are given on it, and lets it jump to other simulation steps.
+ *
+ * A jump may be requested from any thread (see seek), and is made before the
+ * next simulation step, by the thread that evolves the game state.
+ */
+class ReplayControl {
+
+	private final PlayGameScreen screen;
+	private final JournalPlayer player;
+
+	// simulation step to which the player should jump, or -1
+	private volatile long seekTarget = -1;
+	private volatile boolean seeking = false;
+
+	public ReplayControl(PlayGameScreen screen, JournalPlayer player) {
+		this.screen = screen;
+		this.player = player;
+		player.setScreen(screen);
+	}
+
+	public JournalPlayer getPlayer() {
+		return player;
+	}
+
+	/**
+	 * Take a single simulation step of the recorded game
+	 */
+	public void step() {
+		player.step();
+	}
+
+	/**
+	 * Let the player jump to the given simulation step before the next one
+	 * is taken
+	 */
+	public void seek(long tick) {
+		seekTarget = Math.max(0, tick);
+	}
+
+	/**
+	 * Seek to the step under the given point, if it is on the given timeline
+	 * of the recorded game (which may be null)
+	 *
+	 * @return whether the point is on the timeline
+	 */
+	public boolean seekTo(Point point, Rectangle2D timeline) {
+		if (timeline == null || !timeline.contains(point)) {
+			return false;
+		}
+		double fraction = (point.getX() - timeline.getX())
+				/ timeline.getWidth();
+		seek(Math.round(fraction * player.getJournal().getLastTick()));
+		return true;
+	}
+
+	/**
+	 * Let the player jump to the simulation step that was requested with
+	 * seek, if any
+	 *
+	 * @return whether the player jumped
+	 */
+	public boolean seekIfRequested() {
+		long target = seekTarget;
+		if (target < 0) {
+			return false;
+		}
+		seekTarget = -1;
+		seeking = true;
+		try {
+			synchronized (screen.getGameState()) {
+				player.seek(target);
+			}
+		} finally {
+			seeking = false;
+		}
+		return true;
+	}
+
+	/**
+	 * Whether the player is jumping to another step, so that the commands it
+	 * executes again should not show their messages
+	 */
+	public boolean isSeeking() {
+		return seeking;
+	}
+}
@@ -0,0 +1,68 @@
+package worms.gui.game;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Evolves the game state of a play screen on a dedicated thread, in fixed
+ * steps at GUIConstants.SIMULATION_RATE.
+ *
+ * After every update, the new state of the worms is published as a
+ * WorldSnapshot, so painting never has to wait for the simulation (and the
+ * other way around).
+ */
+class SimulationLoop implements Runnable {
+
+	private final PlayGameScreen screen;
+
+	private volatile boolean running = false;
+	private Thread thread;
+
+	public SimulationLoop(PlayGameScreen screen) {
+		this.screen = screen;
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this, "Worms simulation loop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	@Override
+	public void run() {
+		try {
+			loop();
+		} catch (final RuntimeException e) {
+			running = false;
+			e.printStackTrace();
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					screen.getGUI().showError(
+							e.getClass().getName() + ": " + e.getMessage());
+				}
+			});
+		}
+	}
+
+	private void loop() {
+		FixedTimestepClock clock = screen.getClock();
+		while (running) {
+			screen.tick();
+
+			long sleep = clock.getTime() + clock.getStepDuration()
+					- System.nanoTime();
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep / 1000000L, (int) (sleep % 1000000L));
+				} catch (InterruptedException e) {
+					running = false;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package worms.gui.game;
+
+import java.awt.Graphics2D;
+import java.io.IOException;
+
+/**
+ * Measures the phases of the frames of a play screen, and shows the timings
+ * over the screen on request.
+ */
+class TimingsOverlay {
+
+	private final PhaseTimings timings = new PhaseTimings();
+	private volatile boolean visible = false;
+
+	public PhaseTimings getTimings() {
+		return timings;
+	}
+
+	/**
+	 * Record that the given phase, which started at the given time
+	 * (System.nanoTime), has ended now
+	 */
+	public void record(PhaseTimings.Phase phase, long start) {
+		timings.record(phase, start);
+	}
+
+	/**
+	 * Whether the timings are shown, so that the whole screen changes on
+	 * every frame
+	 */
+	public boolean isVisible() {
+		return visible;
+	}
+
+	public void toggle() {
+		visible = !visible;
+	}
+
+	/**
+	 * Write the timings to a new file in the working directory
+	 *
+	 * @return the name of the file
+	 */
+	public String dump() throws IOException {
+		String filename = "worms-timings-" + System.currentTimeMillis()
+				+ ".txt";
+		timings.dump(filename);
+		return filename;
+	}
+
+	/**
+	 * Paint the timings with the given painter, if they are shown
+	 */
+	public void paint(Graphics2D g, PlayGameScreenPainter painter) {
+		if (visible) {
+			painter.paintTimings(g, timings);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package worms.gui.game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Three buffers shared by one producer thread and one consumer thread,
+ * without locks.
+ *
+ * The producer fills the back buffer and publishes it; the consumer always
+ * reads the most recently published buffer. Neither of them ever waits for
+ * the other, and a buffer is never written while it is being read.
+ */
+public class TripleBuffer<T> {
+
+	private static final int INDEX_MASK = 3;
+	// set in middle when it holds a buffer that the consumer has not seen
+	private static final int FRESH = 4;
+
+	private final Object[] buffers;
+
+	// index of the buffer that was published last, with the FRESH flag
+	private final AtomicInteger middle = new AtomicInteger(1);
+	// only used by the producer
+	private int back = 0;
+	// only used by the consumer
+	private int front = 2;
+
+	public TripleBuffer(T first, T second, T third) {
+		this.buffers = new Object[] { first, second, third };
+	}
+
+	/**
+	 * The buffer that the producer may fill (producer thread only)
+	 */
+	@SuppressWarnings("unchecked")
+	public T getBackBuffer() {
+		return (T) buffers[back];
+	}
+
+	/**
+	 * Make the back buffer available to the consumer, and continue with
+	 * another back buffer (producer thread only)
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * The buffer that was published last (consumer thread only)
+	 */
+	@SuppressWarnings("unchecked")
+	public T getLatest() {
+		if ((middle.get() & FRESH) != 0) {
+			front = middle.getAndSet(front) & INDEX_MASK;
+		}
+		return (T) buffers[front];
+	}
+}
@@ -0,0 +1,283 @@
+package worms.gui.game;
+
+import java.awt.Image;
+import java.util.Arrays;
+import java.util.Set;
+
+import worms.gui.game.sprites.WormSprite;
+import worms.model.IFacade;
+import worms.model.JumpTrajectory;
+import worms.model.Worm;
+
+/**
+ * The state of all worms of a play screen at one moment, as far as it is
+ * needed to paint them.
+ *
+ * A snapshot is filled by the thread that runs the simulation, and read by
+ * the thread that paints (see TripleBuffer). The arrays are reused when a
+ * snapshot is filled again.
+ *
+ * Sprite locations are interpolated between the state before and after the
+ * last simulation step (see FixedTimestepClock), by a fraction that the
+ * painter sets with setInterpolation.
+ */
+public class WorldSnapshot {
+
+	private int size = 0;
+	private int selection = -1;
+	private long time;
+	private boolean previousCaptured = false;
+	private double interpolation = 1;
+
+	private WormSprite[] sprites = new WormSprite[0];
+	private Worm[] worms = new Worm[0];
+	private Image[] images = new Image[0];
+	private double[] imageWidths = new double[0];
+	private double[] imageHeights = new double[0];
+	private double[] centerXs = new double[0];
+	private double[] centerYs = new double[0];
+	private double[] previousCenterXs = new double[0];
+	private double[] previousCenterYs = new double[0];
+	private double[] locationXs = new double[0];
+	private double[] locationYs = new double[0];
+	private double[] radii = new double[0];
+	private double[] orientations = new double[0];
+	private int[] actionPoints = new int[0];
+	private int[] maxActionPoints = new int[0];
+	private String[] names = new String[0];
+	private JumpTrajectory[] trajectories = new JumpTrajectory[0];
+
+	/**
+	 * Remember the sprite locations of the given screen as the state before
+	 * the simulation step that will be captured next
+	 */
+	void capturePrevious(PlayGameScreen screen) {
+		Set<WormSprite> wormSprites = screen
+				.getSpritesOfType(WormSprite.class);
+		ensureCapacity(wormSprites.size());
+		int i = 0;
+		for (WormSprite sprite : wormSprites) {
+			previousCenterXs[i] = sprite.getCenterX();
+			previousCenterYs[i] = sprite.getCenterY();
+			i++;
+		}
+		previousCaptured = true;
+	}
+
+	/**
+	 * Fill this snapshot with the current state of the worms of the given
+	 * screen, which corresponds to the given real time (System.nanoTime).
+	 *
+	 * The jump trajectory is captured for the selected worm, or for all
+	 * worms if allJumpTrajectories is true.
+	 */
+	void capture(PlayGameScreen screen, long time, boolean allJumpTrajectories) {
+		IFacade facade = screen.getFacade();
+		Worm selectedWorm = screen.getGameState().getSelectedWorm();
+		Set<WormSprite> wormSprites = screen
+				.getSpritesOfType(WormSprite.class);
+		ensureCapacity(wormSprites.size());
+		this.time = time;
+		this.interpolation = 1;
+
+		selection = -1;
+		int i = 0;
+		for (WormSprite sprite : wormSprites) {
+			Worm worm = sprite.getWorm();
+			sprites[i] = sprite;
+			worms[i] = worm;
+			images[i] = sprite.getImageToDraw();
+			imageWidths[i] = sprite.getWidth(null);
+			imageHeights[i] = sprite.getHeight(null);
+			centerXs[i] = sprite.getCenterX();
+			centerYs[i] = sprite.getCenterY();
+			if (!previousCaptured) {
+				previousCenterXs[i] = centerXs[i];
+				previousCenterYs[i] = centerYs[i];
+			}
+			locationXs[i] = facade.getX(worm);
+			locationYs[i] = facade.getY(worm);
+			radii[i] = facade.getRadius(worm);
+			orientations[i] = facade.getOrientation(worm);
+			actionPoints[i] = facade.getActionPoints(worm);
+			maxActionPoints[i] = facade.getMaxActionPoints(worm);
+			names[i] = facade.getName(worm);
+			if (worm == selectedWorm) {
+				selection = i;
+			}
+			if (allJumpTrajectories || worm == selectedWorm) {
+				trajectories[i] = facade.findJumpTrajectory(worm);
+			} else {
+				trajectories[i] = null;
+			}
+			i++;
+		}
+		size = i;
+		previousCaptured = false;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (worms.length >= capacity) {
+			return;
+		}
+		sprites = Arrays.copyOf(sprites, capacity);
+		worms = Arrays.copyOf(worms, capacity);
+		images = Arrays.copyOf(images, capacity);
+		imageWidths = Arrays.copyOf(imageWidths, capacity);
+		imageHeights = Arrays.copyOf(imageHeights, capacity);
+		centerXs = Arrays.copyOf(centerXs, capacity);
+		centerYs = Arrays.copyOf(centerYs, capacity);
+		previousCenterXs = Arrays.copyOf(previousCenterXs, capacity);
+		previousCenterYs = Arrays.copyOf(previousCenterYs, capacity);
+		locationXs = Arrays.copyOf(locationXs, capacity);
+		locationYs = Arrays.copyOf(locationYs, capacity);
+		radii = Arrays.copyOf(radii, capacity);
+		orientations = Arrays.copyOf(orientations, capacity);
+		actionPoints = Arrays.copyOf(actionPoints, capacity);
+		maxActionPoints = Arrays.copyOf(maxActionPoints, capacity);
+		names = Arrays.copyOf(names, capacity);
+		trajectories = Arrays.copyOf(trajectories, capacity);
+	}
+
+	/**
+	 * Number of worms in this snapshot
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Index of the selected worm, or -1 if no worm is selected
+	 */
+	public int getSelection() {
+		return selection;
+	}
+
+	/**
+	 * The real time (System.nanoTime) that corresponds to this snapshot
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Set the fraction (between 0 and 1) by which sprite locations are
+	 * interpolated between the previous and the current simulation step
+	 */
+	public void setInterpolation(double interpolation) {
+		this.interpolation = interpolation;
+	}
+
+	public boolean isSelected(int index) {
+		return index == selection;
+	}
+
+	public WormSprite getSprite(int index) {
+		return sprites[index];
+	}
+
+	public Worm getWorm(int index) {
+		return worms[index];
+	}
+
+	/**
+	 * The (shared) image to draw for the worm, to be stretched to the image
+	 * width and height
+	 */
+	public Image getImage(int index) {
+		return images[index];
+	}
+
+	/**
+	 * Width of the sprite image, in pixels
+	 */
+	public double getImageWidth(int index) {
+		return imageWidths[index];
+	}
+
+	/**
+	 * Height of the sprite image, in pixels
+	 */
+	public double getImageHeight(int index) {
+		return imageHeights[index];
+	}
+
+	/**
+	 * Screen x-coordinate of the (interpolated) center of the sprite
+	 */
+	public double getCenterX(int index) {
+		return previousCenterXs[index] + interpolation
+				* (centerXs[index] - previousCenterXs[index]);
+	}
+
+	/**
+	 * Screen y-coordinate of the (interpolated) center of the sprite
+	 */
+	public double getCenterY(int index) {
+		return previousCenterYs[index] + interpolation
+				* (centerYs[index] - previousCenterYs[index]);
+	}
+
+	/**
+	 * Distance along the x-axis from the center of the sprite after the last
+	 * simulation step to its interpolated center, in pixels
+	 */
+	public double getInterpolationOffsetX(int index) {
+		return getCenterX(index) - centerXs[index];
+	}
+
+	/**
+	 * Distance along the y-axis from the center of the sprite after the last
+	 * simulation step to its interpolated center, in pixels
+	 */
+	public double getInterpolationOffsetY(int index) {
+		return getCenterY(index) - centerYs[index];
+	}
+
+	/**
+	 * X-coordinate of the worm (in meter), which is not necessarily the
+	 * location of its sprite
+	 */
+	public double getLocationX(int index) {
+		return locationXs[index];
+	}
+
+	/**
+	 * Y-coordinate of the worm (in meter), which is not necessarily the
+	 * location of its sprite
+	 */
+	public double getLocationY(int index) {
+		return locationYs[index];
+	}
+
+	/**
+	 * Radius of the worm (in meter)
+	 */
+	public double getRadius(int index) {
+		return radii[index];
+	}
+
+	public double getOrientation(int index) {
+		return orientations[index];
+	}
+
+	public int getActionPoints(int index) {
+		return actionPoints[index];
+	}
+
+	public int getMaxActionPoints(int index) {
+		return maxActionPoints[index];
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * The trajectory of a jump of the worm, or null if it cannot jump or if
+	 * its trajectory was not captured
+	 */
+	public JumpTrajectory getJumpTrajectory(int index) {
+		return trajectories[index];
+	}
+}
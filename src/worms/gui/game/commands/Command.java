@@ -2,9 +2,17 @@ package worms.gui.game.commands;
 
 import worms.gui.game.PlayGameScreen;
 import worms.model.IFacade;
+import worms.model.Worm;
 
 public abstract class Command {
 
+	/**
+	 * Maximum number of commands that are merged into a single command by
+	 * coalesce, so that a flood of commands for one worm is not taken in
+	 * without limit but is held back by the capacity of the processor
+	 */
+	protected static final int MAX_COALESCED = 64;
+
 	private final IFacade facade;
 	private final PlayGameScreen screen;
 
@@ -12,6 +20,21 @@ public abstract class Command {
 	private boolean cancelled = false;
 	private boolean started = false;
 
+	// real times (System.nanoTime) at which this command was enqueued and
+	// started, kept by the CommandProcessor
+	long enqueuedAt;
+	long startedAt;
+	// the order in which the CommandProcessor took this command in, which
+	// is the same in a replay
+	long sequenceNumber;
+
+	/**
+	 * Create a new command that changes the model through the given facade,
+	 * and shows its progress on the given screen.
+	 *
+	 * The screen may be null, in which case the command runs headless: it
+	 * only changes the model.
+	 */
 	protected Command(IFacade facade, PlayGameScreen screen) {
 		this.facade = facade;
 		this.screen = screen;
@@ -25,16 +48,91 @@ public abstract class Command {
 		return facade;
 	}
 
+	/**
+	 * Merge the given command, which was enqueued right after this one for
+	 * the same worm, into this command if that does not change the effect of
+	 * the commands. Neither command has started yet. At most MAX_COALESCED
+	 * commands are merged into one.
+	 * 
+	 * @return whether the given command was merged into this one
+	 */
+	protected boolean coalesce(Command next) {
+		return false;
+	}
+
+	/**
+	 * The worm this command is about, or null if it is not about a single
+	 * worm
+	 */
+	public abstract Worm getWorm();
+
+	/**
+	 * Whether this command runs without a screen
+	 */
+	protected boolean isHeadless() {
+		return screen == null;
+	}
+
+	/**
+	 * Show the given message on the screen, if any
+	 */
+	protected void showMessage(String message) {
+		if (!isHeadless()) {
+			getScreen().addMessage(message);
+		}
+	}
+
 	public final void startExecution() {
 		if (canExecute()) {
 			doStartExecution();
 			started = true;
 		} else {
-			cancelled = true;
-			executionCancelled();
+			cancel();
 		}
 	}
 
+	/**
+	 * Continue executing this command, which replaces a command that had
+	 * been executing for the given time in a game in the same state (see
+	 * CommandJournal.recordKeyframe), without changing the model again. The
+	 * given progress is the one of the replaced command (see getProgress).
+	 */
+	final void resumeExecution(double elapsedTime, int progress) {
+		this.elapsedTime = elapsedTime;
+		doResumeExecution(progress);
+		started = true;
+	}
+
+	/**
+	 * The part of this command that has been executed, for as far as it is
+	 * needed to resume its execution (see resumeExecution)
+	 */
+	protected int getProgress() {
+		return 0;
+	}
+
+	/**
+	 * Set up this command to continue executing, after the model was
+	 * changed as when it started with the given progress (see getProgress)
+	 */
+	protected void doResumeExecution(int progress) {
+		throw new IllegalStateException(getClass().getSimpleName()
+				+ " commands cannot be resumed");
+	}
+
+	/**
+	 * Stop executing this command, because it cannot be executed (any
+	 * further)
+	 */
+	protected final void cancel() {
+		cancelled = true;
+		executionCancelled();
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
 	public final void update(double dt) {
 		elapsedTime += dt;
 		if (!isFinished()) {
@@ -0,0 +1,107 @@
+package worms.gui.game.commands;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue of commands that any number of threads may offer commands
+ * to, and that a single thread takes commands from, without locks.
+ *
+ * The commands are kept in a ring of slots. Every slot has a sequence number
+ * that tells whether it is free for the producer that claimed position p
+ * (sequence == p), or holds the command for position p (sequence == p + 1).
+ * Producers claim positions with a compare-and-set on the tail; the consumer
+ * owns the head. Offering and polling never allocate.
+ */
+class CommandIntake {
+
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<Command> slots;
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong tail = new AtomicLong();
+	// only written by the consumer
+	private volatile long head = 0;
+
+	/**
+	 * Create a new intake with the given capacity, rounded up to a power of
+	 * two
+	 */
+	public CommandIntake(int capacity) {
+		if (capacity <= 0 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		int rounded = 1;
+		while (rounded < capacity) {
+			rounded <<= 1;
+		}
+		this.capacity = rounded;
+		this.mask = this.capacity - 1;
+		this.slots = new AtomicReferenceArray<Command>(this.capacity);
+		this.sequences = new AtomicLongArray(this.capacity);
+		for (int i = 0; i < this.capacity; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Add the given command, from any thread
+	 * 
+	 * @return false if the intake is full
+	 */
+	public boolean offer(Command command) {
+		long position = tail.get();
+		while (true) {
+			long sequence = sequences.get((int) position & mask);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+				position = tail.get();
+			} else if (sequence < position) {
+				// the slot still holds the command of the previous round
+				return false;
+			} else {
+				// another producer claimed this position
+				position = tail.get();
+			}
+		}
+		int index = (int) position & mask;
+		slots.lazySet(index, command);
+		sequences.lazySet(index, position + 1);
+		return true;
+	}
+
+	/**
+	 * Take the oldest command (consumer thread only)
+	 * 
+	 * @return the command, or null if there is none (or if the producer that
+	 *         claimed the next position has not stored its command yet)
+	 */
+	public Command poll() {
+		long position = head;
+		int index = (int) position & mask;
+		if (sequences.get(index) != position + 1) {
+			return null;
+		}
+		Command command = slots.get(index);
+		slots.lazySet(index, null);
+		sequences.lazySet(index, position + capacity);
+		head = position + 1;
+		return command;
+	}
+
+	/**
+	 * Approximate number of commands in the intake (from any thread)
+	 */
+	public int size() {
+		long size = tail.get() - head;
+		return (int) Math.max(0, Math.min(capacity, size));
+	}
+}
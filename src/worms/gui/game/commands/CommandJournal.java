@@ -0,0 +1,406 @@
+package worms.gui.game.commands;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import worms.model.IFacade;
+import worms.model.Worm;
+
+/**
+ * An append-only binary file with every command that a CommandProcessor has
+ * taken in, from which the game can be replayed (see JournalReader).
+ *
+ * The file starts with a header that holds everything that is needed to
+ * recreate the game: the random seed and size of the world, the number of
+ * worms, the duration of a simulation step and the queue settings of the
+ * processor. Every command is then written as a single record:
+ *
+ * <pre>
+ * byte type, long tick, int worm, arguments
+ * </pre>
+ *
+ * where tick is the number of simulation steps that were taken before the
+ * command was enqueued, worm is the index of its worm in the game (-1 for
+ * none), and the arguments depend on the type: int steps (MOVE), double
+ * angle (TURN), nothing (JUMP), double factor (RESIZE), or int length and
+ * UTF-8 bytes of the name (RENAME). All numbers are big-endian.
+ *
+ * Every so many simulation steps, the state of all worms is written as a
+ * keyframe, from which a replay can start instead of from the beginning
+ * (see JournalReader.restoreKeyframe). It includes the commands that have
+ * not finished yet, so that keyframes are written even while commands are
+ * executing:
+ *
+ * <pre>
+ * byte KEYFRAME, long tick, int length, int nbWorms,
+ * nbWorms * (double x, double y, double orientation, double radius,
+ *     int actionPoints, int length and UTF-8 bytes of the name),
+ * long nextSequenceNumber, int nbCommands,
+ * nbCommands * (byte started, long sequenceNumber, record,
+ *     [double elapsedTime, int progress])
+ * </pre>
+ *
+ * where the first length is the number of bytes after it, so that readers
+ * can skip the keyframe. The commands are written lane by lane, as records
+ * of the same format as above, with the sequence numbers in which the
+ * processor took them in (which decide which command DROP_OLDEST drops). A
+ * command that has started is followed by its elapsed time and progress
+ * (see Command.resumeExecution); coalesced commands that have not started
+ * are written one record each, with the sequence number of the command
+ * they were merged into, since they are coalesced again when the keyframe
+ * is restored.
+ *
+ * Records are written into a memory-mapped region of the file, which is
+ * grown a region at a time, so that recording a command does not make a
+ * system call. Since the file is zero-filled beyond the last record, and
+ * zero is not a valid type, a journal that was never closed can still be
+ * read.
+ *
+ * A journal may only be used by the thread that advances the commands.
+ */
+public class CommandJournal {
+
+	static final int MAGIC = 0x574a524e; // "WJRN"
+	static final short VERSION = 4;
+	static final int HEADER_SIZE = 40;
+
+	static final byte END = 0;
+	static final byte MOVE = 1;
+	static final byte TURN = 2;
+	static final byte JUMP = 3;
+	static final byte RESIZE = 4;
+	static final byte RENAME = 5;
+	static final byte KEYFRAME = 6;
+
+	/**
+	 * Default number of simulation steps between keyframes (10 seconds)
+	 */
+	public static final long DEFAULT_KEYFRAME_INTERVAL = 600;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int RECORD_SIZE = 1 + 8 + 4;
+	private static final int REGION_SIZE = 1 << 20;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer region;
+	private long regionStart = 0;
+	private boolean closed = false;
+
+	// worms do not override equals
+	private final Map<Worm, Integer> wormIds = new IdentityHashMap<Worm, Integer>();
+
+	private long nbRecords = 0;
+	private long keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+	private long lastKeyframeTick = -1;
+	private int nbKeyframes = 0;
+	private IOException failure;
+
+	/**
+	 * Create a new journal in the file with the given name, replacing any
+	 * existing file, for a game with the given settings whose worms are the
+	 * given ones, in the order in which they were created
+	 */
+	public CommandJournal(String filename, long randomSeed, int width,
+			int height, List<Worm> worms, double timeStep,
+			CommandProcessor processor) throws IOException {
+		for (int i = 0; i < worms.size(); i++) {
+			wormIds.put(worms.get(i), i);
+		}
+		this.file = new RandomAccessFile(filename, "rw");
+		try {
+			file.setLength(0);
+			this.channel = file.getChannel();
+			this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					REGION_SIZE);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		region.putInt(MAGIC);
+		region.putShort(VERSION);
+		region.putLong(randomSeed);
+		region.putInt(width);
+		region.putInt(height);
+		region.putInt(worms.size());
+		region.putDouble(timeStep);
+		region.putInt(processor.getCapacity());
+		region.put((byte) processor.getOverflowPolicy().ordinal());
+		region.put((byte) (processor.isCoalescing() ? 1 : 0));
+	}
+
+	/**
+	 * Append the given command, which was taken in after the given number of
+	 * simulation steps.
+	 *
+	 * If the journal cannot be written, it stops recording (see
+	 * getFailure).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the command cannot be recorded, or is about a worm that
+	 *             is not one of the worms of the journal
+	 */
+	public void record(Command cmd, long tick) {
+		if (failure != null || closed) {
+			return;
+		}
+		// before anything is written
+		getWormId(cmd);
+		try {
+			ensureRemaining(getRecordSize(cmd));
+		} catch (IOException e) {
+			failure = e;
+			return;
+		}
+		putRecord(cmd, tick);
+		nbRecords++;
+	}
+
+	/**
+	 * Number of bytes of the record of the given command
+	 */
+	private static int getRecordSize(Command cmd) {
+		if (cmd instanceof Move) {
+			return RECORD_SIZE + 4;
+		} else if (cmd instanceof Turn) {
+			return RECORD_SIZE + 8;
+		} else if (cmd instanceof Jump) {
+			return RECORD_SIZE;
+		} else if (cmd instanceof Resize) {
+			return RECORD_SIZE + 8;
+		} else if (cmd instanceof Rename) {
+			return RECORD_SIZE + 4
+					+ ((Rename) cmd).getNewName().getBytes(UTF8).length;
+		} else {
+			throw new IllegalArgumentException("Cannot record "
+					+ cmd.getClass().getSimpleName() + " commands");
+		}
+	}
+
+	private void putRecord(Command cmd, long tick) {
+		if (cmd instanceof Move) {
+			putRecordStart(MOVE, cmd, tick);
+			region.putInt(((Move) cmd).getNbSteps());
+		} else if (cmd instanceof Turn) {
+			putRecordStart(TURN, cmd, tick);
+			region.putDouble(((Turn) cmd).getAngle());
+		} else if (cmd instanceof Jump) {
+			putRecordStart(JUMP, cmd, tick);
+		} else if (cmd instanceof Resize) {
+			putRecordStart(RESIZE, cmd, tick);
+			region.putDouble(((Resize) cmd).getFactor());
+		} else {
+			byte[] name = ((Rename) cmd).getNewName().getBytes(UTF8);
+			putRecordStart(RENAME, cmd, tick);
+			region.putInt(name.length);
+			region.put(name);
+		}
+	}
+
+	private void putRecordStart(byte type, Command cmd, long tick) {
+		region.put(type);
+		region.putLong(tick);
+		region.putInt(getWormId(cmd));
+	}
+
+	/**
+	 * Index of the worm of the given command in the game, or -1 if the
+	 * command is not about a worm
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the worm is not one of the worms of this journal
+	 */
+	private int getWormId(Command cmd) {
+		Worm worm = cmd.getWorm();
+		if (worm == null) {
+			return -1;
+		}
+		Integer wormId = wormIds.get(worm);
+		if (wormId == null) {
+			throw new IllegalArgumentException("Cannot record "
+					+ cmd.getClass().getSimpleName()
+					+ " command for a worm that is not in the game");
+		}
+		return wormId;
+	}
+
+	/**
+	 * Set the number of simulation steps after the last keyframe when a new
+	 * keyframe is due
+	 */
+	public void setKeyframeInterval(long keyframeInterval) {
+		if (keyframeInterval <= 0) {
+			throw new IllegalArgumentException("Invalid keyframe interval: "
+					+ keyframeInterval);
+		}
+		this.keyframeInterval = keyframeInterval;
+	}
+
+	/**
+	 * Whether a keyframe should be recorded after the given number of
+	 * simulation steps
+	 */
+	public boolean isKeyframeDue(long tick) {
+		return lastKeyframeTick < 0
+				|| tick - lastKeyframeTick >= keyframeInterval;
+	}
+
+	/**
+	 * Append the state of the given worms (all worms of the game, in the
+	 * order in which they were created) after the given number of simulation
+	 * steps, together with the commands of the given processor that have not
+	 * finished yet.
+	 *
+	 * Must be called right after the commands were advanced, from the thread
+	 * that advances them.
+	 */
+	public void recordKeyframe(long tick, IFacade facade, List<Worm> worms,
+			CommandProcessor processor) {
+		if (failure != null || closed) {
+			return;
+		}
+		int nbWorms = worms.size();
+		byte[][] names = new byte[nbWorms][];
+		int length = 4;
+		for (int i = 0; i < nbWorms; i++) {
+			names[i] = facade.getName(worms.get(i)).getBytes(UTF8);
+			length += 4 * 8 + 4 + 4 + names[i].length;
+		}
+		List<Command> commands = processor.getUnfinishedCommands();
+		int nbCommands = 0;
+		length += 8 + 4;
+		for (Command cmd : commands) {
+			getWormId(cmd);
+			if (cmd.isStarted()) {
+				length += 1 + 8 + getRecordSize(cmd) + 8 + 4;
+				nbCommands++;
+			} else if (cmd instanceof Move) {
+				length += ((Move) cmd).getNbMoves() * (1 + 8 + RECORD_SIZE + 4);
+				nbCommands += ((Move) cmd).getNbMoves();
+			} else if (cmd instanceof Turn) {
+				length += ((Turn) cmd).getNbTurns() * (1 + 8 + RECORD_SIZE + 8);
+				nbCommands += ((Turn) cmd).getNbTurns();
+			} else {
+				length += 1 + 8 + getRecordSize(cmd);
+				nbCommands++;
+			}
+		}
+		try {
+			ensureRemaining(1 + 8 + 4 + length);
+		} catch (IOException e) {
+			failure = e;
+			return;
+		}
+		region.put(KEYFRAME);
+		region.putLong(tick);
+		region.putInt(length);
+		region.putInt(nbWorms);
+		for (int i = 0; i < nbWorms; i++) {
+			Worm worm = worms.get(i);
+			region.putDouble(facade.getX(worm));
+			region.putDouble(facade.getY(worm));
+			region.putDouble(facade.getOrientation(worm));
+			region.putDouble(facade.getRadius(worm));
+			region.putInt(facade.getActionPoints(worm));
+			region.putInt(names[i].length);
+			region.put(names[i]);
+		}
+		region.putLong(processor.getNextSequenceNumber());
+		region.putInt(nbCommands);
+		for (Command cmd : commands) {
+			if (cmd.isStarted()) {
+				region.put((byte) 1);
+				region.putLong(cmd.sequenceNumber);
+				putRecord(cmd, tick);
+				region.putDouble(cmd.getElapsedTime());
+				region.putInt(cmd.getProgress());
+			} else if (cmd instanceof Move) {
+				Move move = (Move) cmd;
+				for (int i = 0; i < move.getNbMoves(); i++) {
+					region.put((byte) 0);
+					region.putLong(cmd.sequenceNumber);
+					putRecordStart(MOVE, cmd, tick);
+					region.putInt(move.getNbSteps(i));
+				}
+			} else if (cmd instanceof Turn) {
+				Turn turn = (Turn) cmd;
+				for (int i = 0; i < turn.getNbTurns(); i++) {
+					region.put((byte) 0);
+					region.putLong(cmd.sequenceNumber);
+					putRecordStart(TURN, cmd, tick);
+					region.putDouble(turn.getAngle(i));
+				}
+			} else {
+				region.put((byte) 0);
+				region.putLong(cmd.sequenceNumber);
+				putRecord(cmd, tick);
+			}
+		}
+		lastKeyframeTick = tick;
+		nbKeyframes++;
+	}
+
+	/**
+	 * Map a new region of the file, right after the last record, if the
+	 * current region has less than the given number of bytes left
+	 */
+	private void ensureRemaining(int size) throws IOException {
+		if (region.remaining() >= size) {
+			return;
+		}
+		long position = getLength();
+		region = channel.map(FileChannel.MapMode.READ_WRITE, position,
+				Math.max(REGION_SIZE, size));
+		regionStart = position;
+	}
+
+	/**
+	 * Number of bytes written so far, including the header
+	 */
+	public long getLength() {
+		return regionStart + region.position();
+	}
+
+	/**
+	 * Number of commands recorded so far
+	 */
+	public long getNbRecords() {
+		return nbRecords;
+	}
+
+	public int getNbKeyframes() {
+		return nbKeyframes;
+	}
+
+	/**
+	 * The reason why the journal stopped recording, or null if it did not
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Write the recorded commands to disk, and cut off the unused part of
+	 * the file. No more commands are recorded afterwards.
+	 */
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		region.force();
+		try {
+			// the region may not be written anymore once it is cut off
+			channel.truncate(getLength());
+		} finally {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package worms.gui.game.commands;
+
+import worms.gui.TimingHistogram;
+
+/**
+ * Counters and histograms about the commands that pass through a
+ * CommandProcessor: how long commands wait in the queue before they start,
+ * how long they execute, how many are cancelled, and how deep the queue is.
+ *
+ * All times are real times, in nanoseconds.
+ */
+public class CommandMetrics {
+
+	/**
+	 * Duration of a window of the histograms, in nanoseconds
+	 */
+	public static final long WINDOW = 10000000000L;
+
+	/**
+	 * Number of queue depth samples that are kept
+	 */
+	public static final int DEPTH_HISTORY = 256;
+
+	private final TimingHistogram waitTimes = new TimingHistogram(WINDOW);
+	private final TimingHistogram executionTimes = new TimingHistogram(WINDOW);
+
+	private long nbEnqueued = 0;
+	private long nbStarted = 0;
+	private long nbCancelled = 0;
+	private long nbCoalesced = 0;
+	private long nbDropped = 0;
+	private long nbCompleted = 0;
+
+	private int depth = 0;
+	private int maxDepth = 0;
+	private final int[] depthHistory = new int[DEPTH_HISTORY];
+	private long nbDepthSamples = 0;
+
+	synchronized void commandEnqueued(int newDepth) {
+		nbEnqueued++;
+		setDepth(newDepth);
+	}
+
+	synchronized void commandCoalesced() {
+		nbEnqueued++;
+		nbCoalesced++;
+	}
+
+	synchronized void commandDropped() {
+		nbDropped++;
+	}
+
+	synchronized void commandStarted(long waitTime, long now, int newDepth) {
+		nbStarted++;
+		waitTimes.record(waitTime, now);
+		setDepth(newDepth);
+	}
+
+	synchronized void commandFinished(boolean cancelled, long executionTime,
+			long now) {
+		if (cancelled) {
+			nbCancelled++;
+		} else {
+			nbCompleted++;
+			executionTimes.record(executionTime, now);
+		}
+	}
+
+	/**
+	 * All commands were dropped or cancelled (see CommandProcessor.clear)
+	 */
+	synchronized void queueCleared() {
+		setDepth(0);
+	}
+
+	private void setDepth(int newDepth) {
+		depth = newDepth;
+		if (depth > maxDepth) {
+			maxDepth = depth;
+		}
+	}
+
+	/**
+	 * Remember the current depth of the queue (once per advance of the
+	 * queue)
+	 */
+	synchronized void sampleDepth() {
+		depthHistory[(int) (nbDepthSamples % DEPTH_HISTORY)] = depth;
+		nbDepthSamples++;
+	}
+
+	public synchronized long getNbEnqueued() {
+		return nbEnqueued;
+	}
+
+	public synchronized long getNbStarted() {
+		return nbStarted;
+	}
+
+	/**
+	 * Number of commands that were merged into the command before them
+	 */
+	public synchronized long getNbCoalesced() {
+		return nbCoalesced;
+	}
+
+	/**
+	 * Number of commands that were dropped because the queue was full
+	 */
+	public synchronized long getNbDropped() {
+		return nbDropped;
+	}
+
+	/**
+	 * Number of commands that could not be executed, or stopped early
+	 */
+	public synchronized long getNbCancelled() {
+		return nbCancelled;
+	}
+
+	/**
+	 * Number of commands that finished executing normally
+	 */
+	public synchronized long getNbCompleted() {
+		return nbCompleted;
+	}
+
+	/**
+	 * Number of commands that wait in the queue (not including the one that
+	 * is executing)
+	 */
+	public synchronized int getQueueDepth() {
+		return depth;
+	}
+
+	public synchronized int getMaxQueueDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * The most recent samples of the queue depth, oldest first (at most
+	 * DEPTH_HISTORY)
+	 */
+	public synchronized int[] getDepthHistory() {
+		int n = (int) Math.min(nbDepthSamples, DEPTH_HISTORY);
+		int[] result = new int[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = depthHistory[(int) ((nbDepthSamples - n + i) % DEPTH_HISTORY)];
+		}
+		return result;
+	}
+
+	/**
+	 * Time between enqueueing and starting a command
+	 */
+	public TimingHistogram getWaitTimes() {
+		return waitTimes;
+	}
+
+	/**
+	 * Time between starting and finishing a command that was not cancelled
+	 */
+	public TimingHistogram getExecutionTimes() {
+		return executionTimes;
+	}
+}
@@ -1,36 +1,485 @@
 package worms.gui.game.commands;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
+import java.util.Map;
 
+import worms.model.Worm;
+
+/**
+ * Executes commands in lanes, one lane per worm.
+ *
+ * Commands for the same worm are executed one after the other, in the order
+ * in which they were enqueued; commands for different worms are executed
+ * concurrently. Commands that are not about a single worm share a lane of
+ * their own.
+ *
+ * Commands can be submitted from any thread; they are taken into the lanes
+ * (in batches) by the thread that advances the commands. All other methods
+ * may only be called by that thread.
+ *
+ * A command that is enqueued right after another one in the same lane that
+ * has not started yet, may be coalesced into it (e.g., repeated moves).
+ *
+ * At most a given number of commands wait in the lanes; what happens to
+ * commands beyond that depends on the OverflowPolicy. Producers should stop
+ * submitting commands while the processor is saturated.
+ *
+ * Every command that is taken in can be recorded in a CommandJournal, from
+ * which the game can be replayed.
+ */
 public class CommandProcessor {
-	private Queue<Command> commandQueue = new LinkedList<Command>();
-	private Command executingCommand;
 
+	/**
+	 * The commands for a single worm
+	 */
+	private class Lane {
+		private final LinkedList<Command> commandQueue = new LinkedList<Command>();
+		private Command executingCommand;
+		private boolean active = false;
+
+		private boolean isIdle() {
+			return executingCommand == null && commandQueue.isEmpty();
+		}
+
+		private void startNextCommand() {
+			if (executingCommand != null) {
+				long now = System.nanoTime();
+				metrics.commandFinished(executingCommand.isCancelled(), now
+						- executingCommand.startedAt, now);
+				nbExecuting--;
+			}
+			if (!commandQueue.isEmpty()) {
+				executingCommand = commandQueue.poll();
+				nbQueued--;
+				nbExecuting++;
+				long now = System.nanoTime();
+				executingCommand.startedAt = now;
+				metrics.commandStarted(now - executingCommand.enqueuedAt, now,
+						nbQueued);
+				executingCommand.startExecution();
+			} else {
+				executingCommand = null;
+			}
+		}
+
+		private void advance(double timeDelta) {
+			if (executingCommand == null) {
+				startNextCommand();
+			}
+			if (executingCommand != null) {
+				executingCommand.update(timeDelta);
+				while (executingCommand != null
+						&& executingCommand.isFinished()) {
+					startNextCommand();
+				}
+			}
+		}
+	}
+
+	// worms do not override equals, so lanes are found by identity
+	private final Map<Worm, Lane> lanes = new HashMap<Worm, Lane>();
+	// lanes with pending commands, in the order in which they became active
+	private final List<Lane> activeLanes = new ArrayList<Lane>();
+	private final List<Lane> advancingLanes = new ArrayList<Lane>();
+
+	/**
+	 * Default capacity of the intake for submitted commands
+	 */
+	public static final int INTAKE_CAPACITY = 1024;
+
+	/**
+	 * Default number of commands that may wait in the lanes
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private final CommandIntake intake;
+	private boolean coalescing = true;
+	// read by submitCommand on any thread
+	private volatile int capacity = DEFAULT_CAPACITY;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+	private volatile boolean saturated = false;
+
+	// only written by the thread that advances the commands
+	private volatile int nbQueued = 0;
+	private int nbExecuting = 0;
+	private final CommandMetrics metrics = new CommandMetrics();
+
+	private CommandJournal journal;
+	private long nbAdvances = 0;
+	// sequence number of the next command that is taken in
+	private long nextSequenceNumber = 0;
+
+	public CommandProcessor() {
+		this(INTAKE_CAPACITY);
+	}
+
+	/**
+	 * Create a new command processor that holds at most the given number of
+	 * submitted commands until they are taken into the lanes
+	 */
+	public CommandProcessor(int intakeCapacity) {
+		this.intake = new CommandIntake(intakeCapacity);
+	}
+
+	/**
+	 * Submit the given command, from any thread. It is enqueued at the start
+	 * of the next advance of the commands.
+	 * 
+	 * With the REJECT overflow policy, a command is not accepted while the
+	 * commands that wait in the lanes and in the intake fill the capacity.
+	 * Producers that submit at the same time may still get a few commands
+	 * past that check, which are then dropped when they are enqueued.
+	 * 
+	 * @return false if the command was not accepted, because too many
+	 *         submitted commands are waiting to be enqueued
+	 */
+	public boolean submitCommand(Command cmd) {
+		if (overflowPolicy == OverflowPolicy.REJECT
+				&& nbQueued + intake.size() >= capacity) {
+			return false;
+		}
+		cmd.enqueuedAt = System.nanoTime();
+		return intake.offer(cmd);
+	}
+
+	/**
+	 * Submit the given command, which was recorded in a journal, from any
+	 * thread. Since it was accepted when it was recorded, it is not rejected
+	 * because of the capacity; whether it is dropped when it is enqueued is
+	 * decided exactly as it was then.
+	 * 
+	 * @return false if the command was not accepted, because too many
+	 *         submitted commands are waiting to be enqueued
+	 */
+	public boolean submitRecordedCommand(Command cmd) {
+		cmd.enqueuedAt = System.nanoTime();
+		return intake.offer(cmd);
+	}
+
+	/**
+	 * Enqueue the given command immediately (from the thread that advances
+	 * the commands only)
+	 */
 	public void enqueueCommand(Command cmd) {
-		commandQueue.add(cmd);
+		cmd.enqueuedAt = System.nanoTime();
+		addToLane(cmd);
+	}
+
+	/**
+	 * Enqueue the commands that were submitted since the last advance
+	 */
+	private void drainIntake() {
+		Command cmd;
+		int nbDrained = 0;
+		while (nbDrained < intake.getCapacity()
+				&& (cmd = intake.poll()) != null) {
+			addToLane(cmd);
+			nbDrained++;
+		}
+	}
+
+	private void addToLane(Command cmd) {
+		cmd.sequenceNumber = nextSequenceNumber++;
+		// before coalescing and overflow, which a replay repeats
+		if (journal != null) {
+			journal.record(cmd, nbAdvances);
+		}
+		Lane lane = getLane(cmd.getWorm());
+		if (coalescing && !lane.commandQueue.isEmpty()
+				&& lane.commandQueue.getLast().coalesce(cmd)) {
+			metrics.commandCoalesced();
+			return;
+		}
+		if (nbQueued >= capacity && !makeRoomFor(lane)) {
+			metrics.commandDropped();
+			return;
+		}
+		lane.commandQueue.add(cmd);
+		nbQueued++;
+		activate(lane);
+		metrics.commandEnqueued(nbQueued);
+	}
+
+	/**
+	 * Drop waiting commands according to the overflow policy, to make room
+	 * for a new command in the given lane
+	 * 
+	 * @return false if the new command has to be dropped instead
+	 */
+	private boolean makeRoomFor(Lane lane) {
+		switch (overflowPolicy) {
+		case DROP_OLDEST:
+			// by sequence number rather than by time, so that a replay drops
+			// the same command
+			Lane oldest = null;
+			long oldestSequenceNumber = 0;
+			for (Lane other : activeLanes) {
+				if (!other.commandQueue.isEmpty()) {
+					long sequenceNumber = other.commandQueue.getFirst().sequenceNumber;
+					if (oldest == null || sequenceNumber < oldestSequenceNumber) {
+						oldest = other;
+						oldestSequenceNumber = sequenceNumber;
+					}
+				}
+			}
+			if (oldest == null) {
+				return false;
+			}
+			oldest.commandQueue.removeFirst();
+			nbQueued--;
+			metrics.commandDropped();
+			return true;
+		case COLLAPSE_PER_WORM:
+			if (lane.commandQueue.isEmpty()) {
+				return false;
+			}
+			while (!lane.commandQueue.isEmpty()) {
+				lane.commandQueue.removeFirst();
+				nbQueued--;
+				metrics.commandDropped();
+			}
+			return true;
+		default:
+			return false;
+		}
 	}
 
-	private void startNextCommand() {
-		if (!commandQueue.isEmpty()) {
-			executingCommand = commandQueue.poll();
-			executingCommand.startExecution();
-		} else {
-			executingCommand = null;
+	/**
+	 * Mark this processor as saturated when the queue is full, until half of
+	 * it has drained
+	 */
+	private void updateSaturation() {
+		int waiting = nbQueued + intake.size();
+		if (waiting >= capacity) {
+			saturated = true;
+		} else if (waiting <= capacity / 2) {
+			saturated = false;
 		}
 	}
 
+	/**
+	 * Whether producers should stop submitting commands for now (from any
+	 * thread)
+	 */
+	public boolean isSaturated() {
+		return saturated;
+	}
+
+	/**
+	 * Set the number of commands that may wait in the lanes, and what
+	 * happens to new commands beyond that
+	 */
+	public void setCapacity(int capacity, OverflowPolicy overflowPolicy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	private Lane getLane(Worm worm) {
+		Lane lane = lanes.get(worm);
+		if (lane == null) {
+			lane = new Lane();
+			lanes.put(worm, lane);
+		}
+		return lane;
+	}
+
+	/**
+	 * Set whether commands are merged into the command that was enqueued
+	 * right before them for the same worm, when possible (see
+	 * Command.coalesce)
+	 */
+	public void setCoalescing(boolean coalescing) {
+		this.coalescing = coalescing;
+	}
+
+	public boolean isCoalescing() {
+		return coalescing;
+	}
+
+	/**
+	 * Record every command that is taken in from now on in the given journal,
+	 * or in none if it is null
+	 */
+	public void setJournal(CommandJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Number of times the commands have been advanced so far
+	 */
+	public long getNbAdvances() {
+		return nbAdvances;
+	}
+
+	public CommandMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Number of commands that have not finished yet, including the ones that
+	 * are executing and those that were submitted but not enqueued yet
+	 */
+	public int getNbPendingCommands() {
+		return nbQueued + nbExecuting + intake.size();
+	}
+
+	/**
+	 * Number of lanes that are executing or waiting to execute commands
+	 */
+	public int getNbActiveLanes() {
+		return activeLanes.size();
+	}
+
+	/**
+	 * Drop all commands, including the ones that are executing and those
+	 * that were submitted but not enqueued yet, without finishing them. The
+	 * executing commands count as cancelled, the others as dropped.
+	 */
+	public void clear() {
+		while (intake.poll() != null) {
+			metrics.commandDropped();
+		}
+		long now = System.nanoTime();
+		for (Lane lane : activeLanes) {
+			for (int i = 0; i < lane.commandQueue.size(); i++) {
+				metrics.commandDropped();
+			}
+			lane.commandQueue.clear();
+			if (lane.executingCommand != null) {
+				metrics.commandFinished(true, now
+						- lane.executingCommand.startedAt, now);
+				lane.executingCommand = null;
+			}
+			lane.active = false;
+		}
+		metrics.queueCleared();
+		activeLanes.clear();
+		nbQueued = 0;
+		nbExecuting = 0;
+		updateSaturation();
+	}
+
+	/**
+	 * The commands that have not finished yet, lane by lane in the order in
+	 * which the lanes became active: the executing command of a lane (which
+	 * has started) comes before the commands that wait in it. Commands that
+	 * were submitted but not enqueued yet are not included.
+	 */
+	List<Command> getUnfinishedCommands() {
+		List<Command> result = new ArrayList<Command>(nbExecuting + nbQueued);
+		for (Lane lane : activeLanes) {
+			if (lane.executingCommand != null) {
+				result.add(lane.executingCommand);
+			}
+			result.addAll(lane.commandQueue);
+		}
+		return result;
+	}
+
+	/**
+	 * The sequence number of the next command that is taken in
+	 */
+	long getNextSequenceNumber() {
+		return nextSequenceNumber;
+	}
+
+	/**
+	 * Continue numbering the commands that are taken in from the given
+	 * sequence number, as when a keyframe was recorded
+	 */
+	void restoreNextSequenceNumber(long sequenceNumber) {
+		nextSequenceNumber = sequenceNumber;
+	}
+
+	/**
+	 * Put the given command, which had not started yet when a keyframe was
+	 * recorded, back at the end of its lane, with the sequence number it had
+	 * then. It is coalesced as when it was enqueued, but it is not recorded
+	 * again and the capacity is not checked.
+	 */
+	void restoreCommand(Command cmd, long sequenceNumber) {
+		cmd.enqueuedAt = System.nanoTime();
+		cmd.sequenceNumber = sequenceNumber;
+		Lane lane = getLane(cmd.getWorm());
+		if (coalescing && !lane.commandQueue.isEmpty()
+				&& lane.commandQueue.getLast().coalesce(cmd)) {
+			metrics.commandCoalesced();
+			return;
+		}
+		lane.commandQueue.add(cmd);
+		nbQueued++;
+		activate(lane);
+		metrics.commandEnqueued(nbQueued);
+	}
+
+	/**
+	 * Make the given command the executing command of its lane, which has
+	 * none, and continue executing it as a command with the given sequence
+	 * number that was executing for the given time when a keyframe was
+	 * recorded (see Command.resumeExecution)
+	 */
+	void restoreExecutingCommand(Command cmd, long sequenceNumber,
+			double elapsedTime, int progress) {
+		Lane lane = getLane(cmd.getWorm());
+		if (lane.executingCommand != null) {
+			throw new IllegalStateException("Lane already executing");
+		}
+		cmd.resumeExecution(elapsedTime, progress);
+		long now = System.nanoTime();
+		cmd.enqueuedAt = cmd.startedAt = now;
+		cmd.sequenceNumber = sequenceNumber;
+		lane.executingCommand = cmd;
+		nbExecuting++;
+		activate(lane);
+		metrics.commandEnqueued(nbQueued);
+		metrics.commandStarted(0, now, nbQueued);
+	}
+
+	private void activate(Lane lane) {
+		if (!lane.active) {
+			lane.active = true;
+			activeLanes.add(lane);
+		}
+	}
+
+	/**
+	 * Advance the commands of every lane over the given time
+	 */
 	public void advanceCommandQueue(double timeDelta) {
-		if (executingCommand == null) {
-			startNextCommand();
+		drainIntake();
+		updateSaturation();
+		metrics.sampleDepth();
+		// commands may enqueue new commands while they are advanced
+		advancingLanes.addAll(activeLanes);
+		for (Lane lane : advancingLanes) {
+			lane.advance(timeDelta);
 		}
-		if (executingCommand != null) {
-			executingCommand.update(timeDelta);
-			while (executingCommand != null
-					&& executingCommand.isFinished()) {
-				startNextCommand();
+		advancingLanes.clear();
+
+		int nbActive = 0;
+		for (Lane lane : activeLanes) {
+			if (lane.isIdle()) {
+				lane.active = false;
+			} else {
+				activeLanes.set(nbActive++, lane);
 			}
 		}
+		activeLanes.subList(nbActive, activeLanes.size()).clear();
+		nbAdvances++;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,370 @@
+package worms.gui.game.commands;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import worms.gui.game.PlayGameScreen;
+import worms.model.IFacade;
+import worms.model.Worm;
+
+/**
+ * Reads the settings and commands of a game from a CommandJournal, one
+ * record at a time.
+ *
+ * The whole file is mapped into memory, so that reading a record does not
+ * make a system call nor create any objects (except for the name of a
+ * rename).
+ *
+ * When the journal is opened, its records are scanned once to find the
+ * keyframes, so that a replay can restore the state of the worms at the
+ * last keyframe before any simulation step, and continue from there.
+ */
+public class JournalReader {
+
+	private final MappedByteBuffer buffer;
+
+	private final long randomSeed;
+	private final int width;
+	private final int height;
+	private final int nbWorms;
+	private final double timeStep;
+	private final int queueCapacity;
+	private final OverflowPolicy overflowPolicy;
+	private final boolean coalescing;
+
+	private long[] keyframeTicks = new long[16];
+	private int[] keyframePositions = new int[16];
+	private int nbKeyframes = 0;
+	private long lastTick = 0;
+
+	private byte type = CommandJournal.END;
+	private long tick;
+	private int wormId;
+	private int nbSteps;
+	private double angle;
+	private double factor;
+	private String newName;
+
+	/**
+	 * Open the journal in the file with the given name, and read its header
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a journal of a
+	 *             supported version
+	 */
+	public JournalReader(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Journal too large: " + filename);
+			}
+			// the mapping remains valid after the file is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			file.close();
+		}
+		if (buffer.remaining() < CommandJournal.HEADER_SIZE
+				|| buffer.getInt() != CommandJournal.MAGIC) {
+			throw new IOException("Not a journal: " + filename);
+		}
+		short version = buffer.getShort();
+		if (version != CommandJournal.VERSION) {
+			throw new IOException("Unsupported journal version " + version
+					+ ": " + filename);
+		}
+		randomSeed = buffer.getLong();
+		width = buffer.getInt();
+		height = buffer.getInt();
+		nbWorms = buffer.getInt();
+		timeStep = buffer.getDouble();
+		queueCapacity = buffer.getInt();
+		overflowPolicy = OverflowPolicy.values()[buffer.get()];
+		coalescing = buffer.get() != 0;
+		findKeyframes();
+		rewind();
+	}
+
+	private void findKeyframes() {
+		while (buffer.remaining() > 0) {
+			int position = buffer.position();
+			if (buffer.get(position) == CommandJournal.KEYFRAME) {
+				if (nbKeyframes == keyframeTicks.length) {
+					keyframeTicks = Arrays.copyOf(keyframeTicks,
+							2 * nbKeyframes);
+					keyframePositions = Arrays.copyOf(keyframePositions,
+							2 * nbKeyframes);
+				}
+				keyframeTicks[nbKeyframes] = buffer.getLong(position + 1);
+				keyframePositions[nbKeyframes] = position;
+				lastTick = keyframeTicks[nbKeyframes];
+				nbKeyframes++;
+				skipKeyframe();
+			} else if (next()) {
+				lastTick = tick;
+			} else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Skip the keyframe at the current position
+	 */
+	private void skipKeyframe() {
+		buffer.position(buffer.position() + 1 + 8);
+		int length = buffer.getInt();
+		buffer.position(buffer.position() + length);
+	}
+
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+
+	/**
+	 * Width of the world, in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Height of the world, in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Number of worms that were created when the game started
+	 */
+	public int getNbWorms() {
+		return nbWorms;
+	}
+
+	/**
+	 * Duration of every simulation step, in seconds
+	 */
+	public double getTimeStep() {
+		return timeStep;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public boolean isCoalescing() {
+		return coalescing;
+	}
+
+	/**
+	 * Go to the next command record, skipping keyframes
+	 *
+	 * @return false if there are no more records
+	 */
+	public boolean next() {
+		while (buffer.remaining() > 0
+				&& buffer.get(buffer.position()) == CommandJournal.KEYFRAME) {
+			skipKeyframe();
+		}
+		// a zero type starts the unused part of a journal that was not closed
+		if (buffer.remaining() < 1
+				|| buffer.get(buffer.position()) == CommandJournal.END) {
+			type = CommandJournal.END;
+			return false;
+		}
+		readRecord();
+		return true;
+	}
+
+	/**
+	 * Read the command record at the current position
+	 */
+	private void readRecord() {
+		type = buffer.get();
+		tick = buffer.getLong();
+		wormId = buffer.getInt();
+		switch (type) {
+		case CommandJournal.MOVE:
+			nbSteps = buffer.getInt();
+			break;
+		case CommandJournal.TURN:
+			angle = buffer.getDouble();
+			break;
+		case CommandJournal.JUMP:
+			break;
+		case CommandJournal.RESIZE:
+			factor = buffer.getDouble();
+			break;
+		case CommandJournal.RENAME:
+			byte[] name = new byte[buffer.getInt()];
+			buffer.get(name);
+			newName = new String(name, CommandJournal.UTF8);
+			break;
+		default:
+			throw new IllegalStateException("Invalid record type " + type
+					+ " at " + (buffer.position() - 13));
+		}
+	}
+
+	/**
+	 * The number of simulation steps that were taken before the last command
+	 * or keyframe in the journal
+	 */
+	public long getLastTick() {
+		return lastTick;
+	}
+
+	public int getNbKeyframes() {
+		return nbKeyframes;
+	}
+
+	/**
+	 * The number of simulation steps that were taken before the keyframe
+	 * with the given index (in the order in which they were recorded)
+	 */
+	public long getKeyframeTick(int index) {
+		if (index < 0 || index >= nbKeyframes) {
+			throw new IndexOutOfBoundsException("Keyframe: " + index);
+		}
+		return keyframeTicks[index];
+	}
+
+	/**
+	 * Index of the last keyframe that was recorded after at most the given
+	 * number of simulation steps, or -1 if there is none
+	 */
+	public int findKeyframe(long tick) {
+		int index = Arrays.binarySearch(keyframeTicks, 0, nbKeyframes, tick);
+		if (index < 0) {
+			// before the insertion point
+			return -index - 2;
+		}
+		while (index + 1 < nbKeyframes && keyframeTicks[index + 1] == tick) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Give the given worms (all worms of the game, in the order in which
+	 * they were created) the state of the keyframe with the given index, put
+	 * the commands that had not finished yet back in the given processor
+	 * (which has no commands), for the given screen (which may be null), and
+	 * continue reading at the first record after the keyframe.
+	 *
+	 * @return the number of simulation steps that were taken before the
+	 *         keyframe
+	 */
+	public long restoreKeyframe(int index, IFacade facade, List<Worm> worms,
+			CommandProcessor processor, PlayGameScreen screen) {
+		long keyframeTick = getKeyframeTick(index);
+		setPosition(keyframePositions[index] + 1 + 8 + 4);
+		int nbWorms = buffer.getInt();
+		if (nbWorms != worms.size()) {
+			throw new IllegalArgumentException("Keyframe of " + nbWorms
+					+ " worms, not " + worms.size());
+		}
+		for (int i = 0; i < nbWorms; i++) {
+			double x = buffer.getDouble();
+			double y = buffer.getDouble();
+			double orientation = buffer.getDouble();
+			double radius = buffer.getDouble();
+			int actionPoints = buffer.getInt();
+			byte[] name = new byte[buffer.getInt()];
+			buffer.get(name);
+			facade.restoreWorm(worms.get(i), x, y, orientation, radius,
+					new String(name, CommandJournal.UTF8), actionPoints);
+		}
+		processor.restoreNextSequenceNumber(buffer.getLong());
+		int nbCommands = buffer.getInt();
+		for (int i = 0; i < nbCommands; i++) {
+			boolean started = buffer.get() != 0;
+			long sequenceNumber = buffer.getLong();
+			readRecord();
+			Command cmd = createCommand(facade, worms, screen);
+			if (started) {
+				double elapsedTime = buffer.getDouble();
+				int progress = buffer.getInt();
+				processor.restoreExecutingCommand(cmd, sequenceNumber,
+						elapsedTime, progress);
+			} else {
+				processor.restoreCommand(cmd, sequenceNumber);
+			}
+		}
+		type = CommandJournal.END;
+		return keyframeTick;
+	}
+
+	/**
+	 * The number of simulation steps that were taken before the command of
+	 * the current record was enqueued
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Index of the worm of the current record, in the order in which the
+	 * worms were created, or -1 if the command is not about a worm
+	 */
+	public int getWormId() {
+		return wormId;
+	}
+
+	/**
+	 * Create the command of the current record, for the given worms (in the
+	 * order in which they were created) and the given screen, which may be
+	 * null
+	 */
+	public Command createCommand(IFacade facade, List<Worm> worms,
+			PlayGameScreen screen) {
+		Worm worm = wormId < 0 ? null : worms.get(wormId);
+		switch (type) {
+		case CommandJournal.MOVE:
+			return new Move(facade, worm, nbSteps, screen);
+		case CommandJournal.TURN:
+			return new Turn(facade, worm, angle, screen);
+		case CommandJournal.JUMP:
+			return new Jump(facade, worm, screen);
+		case CommandJournal.RESIZE:
+			return new Resize(facade, worm, factor, screen);
+		case CommandJournal.RENAME:
+			return new Rename(facade, worm, newName, screen);
+		default:
+			throw new IllegalStateException("No current record");
+		}
+	}
+
+	/**
+	 * The current read position in the file, in bytes
+	 */
+	public int getPosition() {
+		return buffer.position();
+	}
+
+	/**
+	 * Continue reading at the given position, which must be the start of a
+	 * record (see getPosition)
+	 */
+	public void setPosition(int position) {
+		buffer.position(position);
+		type = CommandJournal.END;
+	}
+
+	/**
+	 * Continue reading at the first record
+	 */
+	public void rewind() {
+		setPosition(CommandJournal.HEADER_SIZE);
+	}
+}
@@ -3,63 +3,78 @@ package worms.gui.game.commands;
 import worms.gui.game.PlayGameScreen;
 import worms.gui.game.sprites.WormSprite;
 import worms.model.IFacade;
-import worms.model.ModelException;
+import worms.model.JumpTrajectory;
 import worms.model.Worm;
 
 public class Jump extends Command {
 	private final Worm worm;
 	private boolean finished = false;
+	private JumpTrajectory trajectory;
+	private final double[] location = new double[2];
 
 	public Jump(IFacade facade, Worm worm, PlayGameScreen screen) {
 		super(facade, screen);
 		this.worm = worm;
 	}
 
+	@Override
 	public Worm getWorm() {
 		return worm;
 	}
 
 	@Override
 	protected boolean canExecute() {
-		return worm != null;
+		return worm != null && getFacade().canJump(worm);
 	}
 
+	/**
+	 * The trajectory is computed once, the worm does not change until it
+	 * lands.
+	 */
 	@Override
 	protected void doStartExecution() {
-
+		trajectory = getFacade().findJumpTrajectory(getWorm());
 	}
 	
+	/**
+	 * The worm has not changed since the jump started, so the same
+	 * trajectory is computed again.
+	 */
+	@Override
+	protected void doResumeExecution(int progress) {
+		doStartExecution();
+	}
+
 	@Override
 	protected void executionCancelled() {
-		getScreen().addMessage("This worm cannot jump :(");
+		showMessage("This worm cannot jump :(");
 	}
 
 	private double getTotalDuration() {
-		return getFacade().getJumpTime(getWorm());
+		return trajectory.getDuration();
 	}
 
 	@Override
 	protected void doUpdate(double dt) {
-		WormSprite sprite = getScreen().getWormSprite(getWorm());
-
-		try {
-			if (getElapsedTime() >= getTotalDuration()) {
-				getFacade().jump(worm);
-				finished = true;
-				double x = getScreen().getScreenX(getFacade().getX(getWorm()));
-				double y = getScreen().getScreenY(getFacade().getY(getWorm()));
+		if (trajectory == null) {
+			cancel();
+		} else if (getElapsedTime() >= getTotalDuration()) {
+			getFacade().jump(worm);
+			finished = true;
+			if (isHeadless()) {
+				return;
+			}
+			WormSprite sprite = getScreen().getWormSprite(getWorm());
+			double x = getScreen().getScreenX(getFacade().getX(getWorm()));
+			double y = getScreen().getScreenY(getFacade().getY(getWorm()));
 
-				sprite.setCenterLocation(x, y);
-			} else {
-				double[] xy = getFacade().getJumpStep(getWorm(),
-						getElapsedTime());
+			sprite.setCenterLocation(x, y);
+		} else if (!isHeadless()) {
+			trajectory.sampleInto(getElapsedTime(), location, 0);
 
-				sprite.setCenterLocation(getScreen().getScreenX(xy[0]),
-						getScreen().getScreenY(xy[1]));
-			}
-		} catch (ModelException e) {
-			finished = true;
-			executionCancelled();
+			WormSprite sprite = getScreen().getWormSprite(getWorm());
+			sprite.setCenterLocation(getScreen().getScreenX(location[0]),
+					getScreen().getScreenY(location[1]));
 		}
 	}
 
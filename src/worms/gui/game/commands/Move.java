@@ -1,14 +1,27 @@
 package worms.gui.game.commands;
 
+import java.util.Arrays;
+
 import worms.gui.GUIConstants;
 import worms.gui.game.PlayGameScreen;
 import worms.gui.game.sprites.WormSprite;
 import worms.model.IFacade;
 import worms.model.Worm;
 
+/**
+ * Moves a worm a number of steps, animated over MOVE_DURATION per step.
+ *
+ * Moves that are enqueued right after each other for the same worm are
+ * coalesced into a single move. Each of them keeps its own cost in action
+ * points: they are executed one after the other, and those that cannot be
+ * executed are skipped, exactly as separate moves would be.
+ */
 public class Move extends Command {
 	private final Worm worm;
-	private final int nbSteps;
+	// number of steps of each of the coalesced moves
+	private int[] nbSteps;
+	private int nbMoves;
+	private int nbStepsTaken;
 
 	private double startX;
 	private double startY;
@@ -19,24 +32,80 @@ public class Move extends Command {
 	public Move(IFacade facade, Worm worm, int nbSteps, PlayGameScreen screen) {
 		super(facade, screen);
 		this.worm = worm;
-		this.nbSteps = nbSteps;
+		this.nbSteps = new int[] { nbSteps };
+		this.nbMoves = 1;
+	}
+
+	/**
+	 * Total number of steps of this move
+	 */
+	public int getNbSteps() {
+		int result = 0;
+		for (int i = 0; i < nbMoves; i++) {
+			result += nbSteps[i];
+		}
+		return result;
+	}
+
+	@Override
+	protected boolean coalesce(Command next) {
+		if (!(next instanceof Move) || ((Move) next).worm != worm) {
+			return false;
+		}
+		Move other = (Move) next;
+		if (nbMoves + other.nbMoves > MAX_COALESCED) {
+			return false;
+		}
+		if (nbMoves + other.nbMoves > nbSteps.length) {
+			nbSteps = Arrays.copyOf(nbSteps,
+					Math.max(2 * nbSteps.length, nbMoves + other.nbMoves));
+		}
+		System.arraycopy(other.nbSteps, 0, nbSteps, nbMoves, other.nbMoves);
+		nbMoves += other.nbMoves;
+		return true;
+	}
+
+	/**
+	 * Number of moves that were coalesced into this move
+	 */
+	int getNbMoves() {
+		return nbMoves;
 	}
 
+	/**
+	 * Number of steps of the coalesced move with the given index
+	 */
+	int getNbSteps(int index) {
+		return nbSteps[index];
+	}
+
+	@Override
 	public Worm getWorm() {
 		return worm;
 	}
 
 	@Override
 	protected boolean canExecute() {
-		return worm != null && getFacade().canMove(worm, nbSteps);
+		if (worm == null) {
+			return false;
+		}
+		for (int i = 0; i < nbMoves; i++) {
+			if (getFacade().canMove(worm, nbSteps[i])) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	private double getTotalDuration() {
-		return nbSteps * GUIConstants.MOVE_DURATION;
+		return nbStepsTaken * GUIConstants.MOVE_DURATION;
 	}
 
 	@Override
 	protected void doUpdate(double dt) {
+		if (isHeadless()) {
+			return;
+		}
 		WormSprite sprite = getScreen().getWormSprite(getWorm());
 		if (getElapsedTime() < getTotalDuration()) {
 			double t = getElapsedTime() / getTotalDuration();
@@ -56,15 +125,54 @@ public class Move extends Command {
 
 	@Override
 	protected void executionCancelled() {
-		getScreen().addMessage("This worm cannot move :(");
+		showMessage("This worm cannot move :(");
 	}
 
 	@Override
 	protected void doStartExecution() {
+		if (isHeadless()) {
+			executeMoves();
+			return;
+		}
 		this.startX = getScreen().getScreenX(getFacade().getX(worm));
 		this.startY = getScreen().getScreenY(getFacade().getY(worm));
-		getFacade().move(worm, nbSteps);
+		executeMoves();
 		this.finalX = getScreen().getScreenX(getFacade().getX(worm));
 		this.finalY = getScreen().getScreenY(getFacade().getY(worm));
 	}
+
+	/**
+	 * The number of steps that were taken
+	 */
+	@Override
+	protected int getProgress() {
+		return nbStepsTaken;
+	}
+
+	/**
+	 * The worm has already moved; if there is a screen, the move is shown at
+	 * its end.
+	 */
+	@Override
+	protected void doResumeExecution(int progress) {
+		nbStepsTaken = progress;
+		if (isHeadless()) {
+			return;
+		}
+		this.finalX = getScreen().getScreenX(getFacade().getX(worm));
+		this.finalY = getScreen().getScreenY(getFacade().getY(worm));
+		this.startX = finalX;
+		this.startY = finalY;
+	}
+
+	private void executeMoves() {
+		for (int i = 0; i < nbMoves; i++) {
+			if (getFacade().canMove(worm, nbSteps[i])) {
+				getFacade().move(worm, nbSteps[i]);
+				nbStepsTaken += nbSteps[i];
+			} else {
+				executionCancelled();
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package worms.gui.game.commands;
+
+/**
+ * What a CommandProcessor does with a new command when its queue is full.
+ */
+public enum OverflowPolicy {
+	/**
+	 * Drop the new command
+	 */
+	REJECT,
+	/**
+	 * Drop the waiting command that was taken in first, for any worm
+	 */
+	DROP_OLDEST,
+	/**
+	 * Drop the commands that are waiting for the same worm as the new
+	 * command, so that only the newest one is kept; drop the new command if
+	 * there are none
+	 */
+	COLLAPSE_PER_WORM;
+
+	/**
+	 * The policy with the given name, in any case, with '-' for '_' (e.g.,
+	 * "drop-oldest")
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if there is no such policy
+	 */
+	public static OverflowPolicy parse(String name)
+			throws IllegalArgumentException {
+		return valueOf(name.toUpperCase().replace('-', '_'));
+	}
+}
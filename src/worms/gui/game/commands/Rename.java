@@ -16,6 +16,15 @@ public class Rename extends InstantaneousCommand {
 		this.newName = newName;
 	}
 
+	public String getNewName() {
+		return newName;
+	}
+
+	@Override
+	public Worm getWorm() {
+		return worm;
+	}
+
 	@Override
 	protected boolean canExecute() {
 		return worm != null;
@@ -25,9 +34,12 @@ public class Rename extends InstantaneousCommand {
 	protected void doStartExecution() {
 		try {
 			getFacade().rename(worm, newName);
+			if (!isHeadless()) {
+				getScreen().wormRenamed(worm);
+			}
 		} catch (ModelException e) {
 			// an invalid name
-			getScreen().addMessage("Invalid name: " + newName);
+			showMessage("Invalid name: " + newName);
 		}
 	}
 }
\ No newline at end of file
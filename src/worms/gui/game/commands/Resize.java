@@ -17,6 +17,18 @@ public class Resize extends InstantaneousCommand {
 		this.factor = factor;
 	}
 
+	/**
+	 * The factor by which the radius of the worm is multiplied
+	 */
+	public double getFactor() {
+		return factor;
+	}
+
+	@Override
+	public Worm getWorm() {
+		return worm;
+	}
+
 	@Override
 	protected boolean canExecute() {
 		return worm != null;
@@ -27,13 +39,14 @@ public class Resize extends InstantaneousCommand {
 		try {
 			double newRadius = factor * getFacade().getRadius(worm);
 			getFacade().setRadius(worm, newRadius);
-			WormSprite sprite = getScreen().getWormSprite(worm);
-			sprite.setRadius(newRadius);
+			if (!isHeadless()) {
+				WormSprite sprite = getScreen().getWormSprite(worm);
+				sprite.setRadius(newRadius);
+			}
 		} catch (ModelException e) {
 			// an invalid radius
-			getScreen().addMessage(
-					"Cannot " + (factor > 1.0 ? "grow" : "shrink")
-							+ " that worm anymore :(");
+			showMessage("Cannot " + (factor > 1.0 ? "grow" : "shrink")
+					+ " that worm anymore :(");
 		}
 	}
 }
\ No newline at end of file
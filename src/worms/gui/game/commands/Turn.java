@@ -1,33 +1,108 @@
 package worms.gui.game.commands;
 
+import java.util.Arrays;
+
 import worms.gui.game.PlayGameScreen;
 import worms.gui.game.sprites.WormSprite;
 import worms.model.IFacade;
 import worms.model.Worm;
 
+/**
+ * Turns a worm over an angle.
+ *
+ * Turns that are enqueued right after each other for the same worm are
+ * coalesced into a single command. Each of them keeps its own cost in action
+ * points: they are executed one after the other, and those that cannot be
+ * executed are skipped, exactly as separate turns would be.
+ */
 public class Turn extends InstantaneousCommand {
 	private final Worm worm;
-	private final double angle;
+	// angles of each of the coalesced turns
+	private double[] angles;
+	private int nbTurns;
 
 	public Turn(IFacade facade, Worm worm, double angle, PlayGameScreen screen) {
 		super(facade, screen);
 		this.worm = worm;
-		this.angle = angle;
+		this.angles = new double[] { angle };
+		this.nbTurns = 1;
+	}
+
+	/**
+	 * Total angle of this turn
+	 */
+	public double getAngle() {
+		double result = 0;
+		for (int i = 0; i < nbTurns; i++) {
+			result += angles[i];
+		}
+		return result;
+	}
+
+	@Override
+	protected boolean coalesce(Command next) {
+		if (!(next instanceof Turn) || ((Turn) next).worm != worm) {
+			return false;
+		}
+		Turn other = (Turn) next;
+		if (nbTurns + other.nbTurns > MAX_COALESCED) {
+			return false;
+		}
+		if (nbTurns + other.nbTurns > angles.length) {
+			angles = Arrays.copyOf(angles,
+					Math.max(2 * angles.length, nbTurns + other.nbTurns));
+		}
+		System.arraycopy(other.angles, 0, angles, nbTurns, other.nbTurns);
+		nbTurns += other.nbTurns;
+		return true;
+	}
+
+	/**
+	 * Number of turns that were coalesced into this turn
+	 */
+	int getNbTurns() {
+		return nbTurns;
+	}
+
+	/**
+	 * Angle of the coalesced turn with the given index
+	 */
+	double getAngle(int index) {
+		return angles[index];
+	}
+
+	@Override
+	public Worm getWorm() {
+		return worm;
 	}
 
 	@Override
 	protected boolean canExecute() {
-		return getFacade().canTurn(worm, angle);
+		for (int i = 0; i < nbTurns; i++) {
+			if (getFacade().canTurn(worm, angles[i])) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	@Override
 	protected void executionCancelled() {
-		getScreen().addMessage("This worm cannot perform that turn :(");
+		showMessage("This worm cannot perform that turn :(");
 	}
 	
 	@Override
 	protected void doStartExecution() {
-		getFacade().turn(worm, angle);
+		for (int i = 0; i < nbTurns; i++) {
+			if (getFacade().canTurn(worm, angles[i])) {
+				getFacade().turn(worm, angles[i]);
+			} else {
+				executionCancelled();
+			}
+		}
+		if (isHeadless()) {
+			return;
+		}
 		WormSprite sprite = getScreen().getWormSprite(worm);
 		sprite.setDirection(getFacade().getOrientation(worm));
 	}
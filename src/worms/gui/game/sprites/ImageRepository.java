@@ -0,0 +1,205 @@
+package worms.gui.game.sprites;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Process-wide store of decoded images.
+ *
+ * Every image file is decoded once, together with a mipmap pyramid of
+ * successive halvings of the image; pyramids are held through soft
+ * references, so they can be reclaimed when memory runs low.
+ *
+ * Scaled (and flipped) variants are created for quantized scales only, from
+ * the nearest pyramid level, and kept in a bounded least-recently-used cache.
+ * A variant can therefore be slightly larger or smaller than requested;
+ * sprites are expected to stretch it to the exact size when drawing.
+ *
+ * Sprites share the resulting images and must not modify them.
+ */
+public final class ImageRepository {
+
+	/**
+	 * Number of quantized scales per doubling of the scale
+	 */
+	public static final int SCALE_STEPS_PER_OCTAVE = 8;
+
+	/**
+	 * Maximal number of scaled variants that are cached
+	 */
+	private static final int MAX_CACHED_VARIANTS = 128;
+
+	/**
+	 * Smallest width or height of a pyramid level, in pixels
+	 */
+	private static final int MIN_LEVEL_SIZE = 4;
+
+	private static final ImageRepository INSTANCE = new ImageRepository();
+
+	public static ImageRepository getInstance() {
+		return INSTANCE;
+	}
+
+	private static final class Key {
+		private final String filename;
+		private final double scale;
+		private final boolean hflipped;
+
+		public Key(String filename, double scale, boolean hflipped) {
+			this.filename = filename;
+			this.scale = scale;
+			this.hflipped = hflipped;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return filename.equals(other.filename)
+					&& Double.compare(scale, other.scale) == 0
+					&& hflipped == other.hflipped;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(scale);
+			return 31 * (31 * filename.hashCode() + (int) (bits ^ (bits >>> 32)))
+					+ (hflipped ? 1 : 0);
+		}
+	}
+
+	// level i is the original image, scaled by 1 / 2^i
+	private final Map<String, SoftReference<BufferedImage[]>> pyramids = new HashMap<String, SoftReference<BufferedImage[]>>();
+
+	@SuppressWarnings("serial")
+	private final Map<Key, BufferedImage> variants = new LinkedHashMap<Key, BufferedImage>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+			return size() > MAX_CACHED_VARIANTS;
+		}
+	};
+
+	private ImageRepository() {
+	}
+
+	/**
+	 * The scale of the variant that is used for drawing at the given scale:
+	 * the nearest scale of the form 2^(i / SCALE_STEPS_PER_OCTAVE)
+	 */
+	public static double quantizeScale(double scale) {
+		double steps = Math.rint(Math.log(scale) / Math.log(2)
+				* SCALE_STEPS_PER_OCTAVE);
+		return Math.pow(2, steps / SCALE_STEPS_PER_OCTAVE);
+	}
+
+	/**
+	 * The image in the given file, at its original scale
+	 */
+	public synchronized BufferedImage getImage(String filename) {
+		return getPyramid(filename)[0];
+	}
+
+	/**
+	 * The image in the given file, scaled by (approximately) the given factor
+	 * and optionally flipped horizontally
+	 *
+	 * The image is scaled by quantizeScale(scale).
+	 */
+	public synchronized BufferedImage getImage(String filename, double scale,
+			boolean hflipped) {
+		double quantized = quantizeScale(scale);
+		if (quantized == 1.0 && !hflipped) {
+			return getImage(filename);
+		}
+		Key key = new Key(filename, quantized, hflipped);
+		BufferedImage image = variants.get(key);
+		if (image == null) {
+			if (hflipped) {
+				image = ImageSprite.hflip(getImage(filename, quantized, false));
+			} else {
+				image = resample(getPyramid(filename), quantized);
+			}
+			variants.put(key, image);
+		}
+		return image;
+	}
+
+	private BufferedImage[] getPyramid(String filename) {
+		SoftReference<BufferedImage[]> reference = pyramids.get(filename);
+		BufferedImage[] pyramid = (reference == null) ? null : reference
+				.get();
+		if (pyramid == null) {
+			pyramid = createPyramid(loadImage(filename));
+			pyramids.put(filename, new SoftReference<BufferedImage[]>(pyramid));
+		}
+		return pyramid;
+	}
+
+	private static BufferedImage[] createPyramid(BufferedImage original) {
+		int nbLevels = 1;
+		int width = original.getWidth();
+		int height = original.getHeight();
+		while (width / 2 >= MIN_LEVEL_SIZE && height / 2 >= MIN_LEVEL_SIZE) {
+			width /= 2;
+			height /= 2;
+			nbLevels++;
+		}
+		BufferedImage[] pyramid = new BufferedImage[nbLevels];
+		pyramid[0] = original;
+		for (int i = 1; i < nbLevels; i++) {
+			pyramid[i] = drawScaled(pyramid[i - 1],
+					pyramid[i - 1].getWidth() / 2,
+					pyramid[i - 1].getHeight() / 2);
+		}
+		return pyramid;
+	}
+
+	/**
+	 * Scale the original image by the given factor, starting from the
+	 * smallest pyramid level that is not smaller than the result
+	 */
+	private static BufferedImage resample(BufferedImage[] pyramid, double scale) {
+		int level = 0;
+		while (level + 1 < pyramid.length
+				&& Math.pow(2, -(level + 1)) >= scale) {
+			level++;
+		}
+		BufferedImage original = pyramid[0];
+		return drawScaled(pyramid[level],
+				Math.max(1, (int) (scale * original.getWidth())),
+				Math.max(1, (int) (scale * original.getHeight())));
+	}
+
+	private static BufferedImage drawScaled(BufferedImage image, int width,
+			int height) {
+		BufferedImage result = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D resultGraphics = result.createGraphics();
+		resultGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		resultGraphics.drawImage(image, 0, 0, width, height, null);
+		resultGraphics.dispose();
+		return result;
+	}
+
+	private static BufferedImage loadImage(String filename) {
+		try {
+			return ImageIO.read(new File(filename));
+		} catch (IOException e) {
+			throw new RuntimeException(
+					"Could not read file '" + filename + "'", e);
+		}
+	}
+}
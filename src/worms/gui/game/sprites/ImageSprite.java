@@ -3,17 +3,17 @@ package worms.gui.game.sprites;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
 
 public class ImageSprite extends Sprite {
 
+	// images are shared with all other sprites of the same file
+	private final String filename;
+
 	// original image, at original scale
 	private final BufferedImage originalImage;
 
-	// only created when scale != 1.0
+	// shared variant at the quantized scale, stretched to the exact scale
+	// when drawing
 	private BufferedImage scaledImage;
 	// only create when necessary
 	private BufferedImage scaledImageHflipped;
@@ -23,6 +23,7 @@ public class ImageSprite extends Sprite {
 	private double scale;
 
 	public ImageSprite(String filename) {
+		this.filename = filename;
 		this.originalImage = loadImage(filename);
 		this.scaledImage = originalImage;
 		this.scale = 1.0;
@@ -48,31 +49,28 @@ public class ImageSprite extends Sprite {
 
 	public void setScale(double scale) {
 		this.scale = scale;
-		if (scale != 1.0) {
-			this.scaledImage = toBufferedImage(originalImage.getScaledInstance(
-					(int) (scale * originalImage.getWidth()),
-					(int) (scale * originalImage.getHeight()),
-					Image.SCALE_SMOOTH));
-		} else {
-			this.scaledImage = originalImage;
-		}
+		this.scaledImage = ImageRepository.getInstance().getImage(filename,
+				scale, false);
 
 		if (isHflipped()) {
-			this.scaledImageHflipped = hflip(this.scaledImage);
+			this.scaledImageHflipped = ImageRepository.getInstance().getImage(
+					filename, scale, true);
 		} else {
 			this.scaledImageHflipped = null;
 		}
+		fireChanged();
 	}
 
 	public double getScale() {
 		return scale;
 	}
 
-	protected Image getImageToDraw() {
+	public Image getImageToDraw() {
 		Image imageToDraw = scaledImage;
 		if (isHflipped()) {
 			if (scaledImageHflipped == null) {
-				scaledImageHflipped = hflip(scaledImage);
+				scaledImageHflipped = ImageRepository.getInstance().getImage(
+						filename, scale, true);
 			}
 			imageToDraw = scaledImageHflipped;
 		}
@@ -80,16 +78,14 @@ public class ImageSprite extends Sprite {
 	}
 
 	protected BufferedImage loadImage(String filename) {
-		try {
-			return ImageIO.read(new File(filename));
-		} catch (IOException e) {
-			throw new RuntimeException(
-					"Could not read file '" + filename + "'", e);
-		}
+		return ImageRepository.getInstance().getImage(filename);
 	}
 
 	public void setHflipped(boolean value) {
-		hflipped = value;
+		if (hflipped != value) {
+			hflipped = value;
+			fireChanged();
+		}
 	}
 
 	public boolean isHflipped() {
@@ -123,8 +119,10 @@ public class ImageSprite extends Sprite {
 
 	@Override
 	public void draw(Graphics2D g) {
+		int width = (int) getWidth(g);
+		int height = (int) getHeight(g);
 		int x = (int) (getCenterX() - getWidth(g) / 2);
 		int y = (int) (getCenterY() - getHeight(g) / 2);
-		g.drawImage(getImageToDraw(), x, y, null);
+		g.drawImage(getImageToDraw(), x, y, width, height, null);
 	}
 }
\ No newline at end of file
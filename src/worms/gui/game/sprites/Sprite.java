@@ -7,6 +7,8 @@ public abstract class Sprite {
 	private double x;
 	private double y;
 
+	private SpriteListener listener;
+
 	public Sprite() {
 		super();
 	}
@@ -22,8 +24,11 @@ public abstract class Sprite {
 	}
 
 	public void setCenterLocation(double x, double y) {
-		this.x = x;
-		this.y = y;
+		if (x != this.x || y != this.y) {
+			this.x = x;
+			this.y = y;
+			fireChanged();
+		}
 	}
 
 	public double getCenterX() {
@@ -34,4 +39,17 @@ public abstract class Sprite {
 		return y;
 	}
 
-}
\ No newline at end of file
+	public void setListener(SpriteListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Notify the listener (if any) that this sprite has changed
+	 */
+	protected void fireChanged() {
+		if (listener != null) {
+			listener.spriteChanged(this);
+		}
+	}
+
+}
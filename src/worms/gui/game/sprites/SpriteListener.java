@@ -0,0 +1,13 @@
+package worms.gui.game.sprites;
+
+/**
+ * Gets notified when a sprite changes the way it is drawn.
+ */
+public interface SpriteListener {
+
+	/**
+	 * Called after the location, size or appearance of the given sprite has
+	 * changed
+	 */
+	void spriteChanged(Sprite sprite);
+}
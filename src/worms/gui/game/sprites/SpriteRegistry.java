@@ -0,0 +1,84 @@
+package worms.gui.game.sprites;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import worms.model.Worm;
+
+/**
+ * Keeps track of the sprites on a screen.
+ *
+ * Sprites are kept in a bucket per class (and per superclass), and worm
+ * sprites are indexed by their worm, so that lookups do not have to scan or
+ * copy all sprites. Sets returned by this class are unmodifiable live views.
+ */
+public class SpriteRegistry {
+
+	private final Map<Class<?>, Set<Sprite>> buckets = new HashMap<Class<?>, Set<Sprite>>();
+	private final Map<Class<?>, Set<Sprite>> views = new HashMap<Class<?>, Set<Sprite>>();
+	private final Map<Worm, WormSprite> wormSprites = new IdentityHashMap<Worm, WormSprite>();
+
+	public void add(Sprite sprite) {
+		for (Class<?> type = sprite.getClass(); Sprite.class
+				.isAssignableFrom(type); type = type.getSuperclass()) {
+			getBucket(type).add(sprite);
+		}
+		if (sprite instanceof WormSprite) {
+			WormSprite wormSprite = (WormSprite) sprite;
+			wormSprites.put(wormSprite.getWorm(), wormSprite);
+		}
+	}
+
+	public void remove(Sprite sprite) {
+		for (Set<Sprite> bucket : buckets.values()) {
+			bucket.remove(sprite);
+		}
+		if (sprite instanceof WormSprite) {
+			WormSprite wormSprite = (WormSprite) sprite;
+			if (wormSprites.get(wormSprite.getWorm()) == wormSprite) {
+				wormSprites.remove(wormSprite.getWorm());
+			}
+		}
+	}
+
+	private Set<Sprite> getBucket(Class<?> type) {
+		Set<Sprite> bucket = buckets.get(type);
+		if (bucket == null) {
+			bucket = new LinkedHashSet<Sprite>();
+			buckets.put(type, bucket);
+			views.put(type, Collections.unmodifiableSet(bucket));
+		}
+		return bucket;
+	}
+
+	/**
+	 * All sprites that are an instance of the given sprite class, in the
+	 * order in which they were added.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Sprite> Set<T> getSpritesOfType(Class<T> type) {
+		Set<Sprite> view = views.get(type);
+		if (view == null) {
+			return Collections.emptySet();
+		}
+		return (Set<T>) view;
+	}
+
+	public Set<Sprite> getSprites() {
+		return getSpritesOfType(Sprite.class);
+	}
+
+	/**
+	 * The sprite of the given worm, or null if there is none.
+	 */
+	public WormSprite getWormSprite(Worm worm) {
+		if (worm == null) {
+			return null;
+		}
+		return wormSprites.get(worm);
+	}
+}
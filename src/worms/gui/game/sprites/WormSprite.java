@@ -24,6 +24,8 @@ public class WormSprite extends ImageSprite {
 		} else {
 			setHflipped(false);
 		}
+		// the direction indicator has changed, even if the image has not
+		fireChanged();
 	}
 
 	/**
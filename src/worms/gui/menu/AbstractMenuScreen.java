@@ -22,6 +22,8 @@ public abstract class AbstractMenuScreen<Choice> extends Screen {
 	private static final Font SELECTED_CHOICE_FONT = new Font(Font.SANS_SERIF,
 			Font.PLAIN, (CHOICE_HEIGHT * 5) / 6);
 	private static final Color SELECTED_CHOICE_COLOR = Color.YELLOW;
+	private static final Font INSTRUCTIONS_FONT = new Font(Font.SANS_SERIF,
+			Font.BOLD, 20);
 
 	private final Choice[] choices;
 
@@ -117,7 +119,7 @@ public abstract class AbstractMenuScreen<Choice> extends Screen {
 	}
 
 	private void paintInstructions(Graphics2D g) {
-		g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 20));
+		g.setFont(INSTRUCTIONS_FONT);
 		g.setColor(Color.WHITE);
 		GUIUtils.drawCenteredString(g, getInstructions(), getScreenWidth(),
 				INSTRUCTIONS_AREA_HEIGHT / 2);
@@ -1,8 +1,13 @@
 package worms.gui.menu;
 
+import java.io.IOException;
+
 import worms.gui.GameState;
+import worms.gui.GameStateFile;
+import worms.gui.JournalPlayer;
 import worms.gui.WormsGUI;
 import worms.gui.game.PlayGameScreen;
+import worms.gui.game.commands.JournalReader;
 
 enum MainMenuOption {
 	Play("Play worms"), PlayDebug("Play worms (debug mode)"), Exit("Exit");
@@ -56,14 +61,82 @@ public class MainMenuScreen extends AbstractMenuScreen<MainMenuOption> {
 
 	private void startGame(boolean debugMode) {
 		WormsGUI gui = getGUI();
+		if (gui.getOptions().replayFile != null) {
+			startReplay(debugMode);
+			return;
+		}
+		if (gui.getOptions().loadFile != null) {
+			startSavedGame(debugMode);
+			return;
+		}
 		GameState gameState = new GameState(gui.getFacade(),
 				gui.getOptions().randomSeed, gui.getWidth(), gui.getHeight());
+		gameState.setCommandQueueCapacity(
+				gui.getOptions().commandQueueCapacity,
+				gui.getOptions().overflowPolicy);
 
 		PlayGameScreen playGameScreen = PlayGameScreen.create(gui, gameState,
 				debugMode);
 
 		gameState.startGame();
+		startJournal(gameState, playGameScreen);
 		getGUI().switchToScreen(playGameScreen);
 	}
 
+	/**
+	 * Record the given game in the journal file of the options, if any
+	 */
+	private void startJournal(GameState gameState,
+			PlayGameScreen playGameScreen) {
+		if (getGUI().getOptions().journalFile != null) {
+			try {
+				gameState.startJournal(getGUI().getOptions().journalFile);
+			} catch (IOException e) {
+				playGameScreen.addMessage("Cannot record the game: "
+						+ e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Continue the saved game from the load file of the options
+	 */
+	private void startSavedGame(boolean debugMode) {
+		WormsGUI gui = getGUI();
+		GameState gameState;
+		try {
+			gameState = GameStateFile.load(gui.getFacade(),
+					gui.getOptions().loadFile);
+		} catch (IOException e) {
+			gui.showError("Cannot load the game: " + e.getMessage());
+			return;
+		}
+		gameState.setCommandQueueCapacity(
+				gui.getOptions().commandQueueCapacity,
+				gui.getOptions().overflowPolicy);
+		PlayGameScreen playGameScreen = PlayGameScreen.create(gui, gameState,
+				debugMode);
+		startJournal(gameState, playGameScreen);
+		gui.switchToScreen(playGameScreen);
+	}
+
+	/**
+	 * Show the recorded game from the replay file of the options
+	 */
+	private void startReplay(boolean debugMode) {
+		WormsGUI gui = getGUI();
+		JournalPlayer player;
+		try {
+			player = new JournalPlayer(gui.getFacade(), new JournalReader(
+					gui.getOptions().replayFile));
+		} catch (IOException e) {
+			gui.showError("Cannot replay the game: " + e.getMessage());
+			return;
+		}
+		PlayGameScreen playGameScreen = PlayGameScreen.create(gui,
+				player.getGameState(), debugMode);
+		playGameScreen.setJournalPlayer(player);
+		gui.switchToScreen(playGameScreen);
+	}
+
 }
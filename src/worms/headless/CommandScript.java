@@ -0,0 +1,122 @@
+package worms.headless;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import worms.gui.game.commands.Command;
+import worms.gui.game.commands.Jump;
+import worms.gui.game.commands.Move;
+import worms.gui.game.commands.Rename;
+import worms.gui.game.commands.Resize;
+import worms.gui.game.commands.Turn;
+import worms.model.IFacade;
+import worms.model.Worm;
+
+/**
+ * A list of commands for a headless game, read from a text file.
+ *
+ * Every line holds one command, for the worm with the given (0-based) index:
+ *
+ * <pre>
+ * move   &lt;worm&gt; &lt;nbSteps&gt;
+ * turn   &lt;worm&gt; &lt;angle&gt;
+ * jump   &lt;worm&gt;
+ * resize &lt;worm&gt; &lt;factor&gt;
+ * rename &lt;worm&gt; &lt;name&gt;
+ * </pre>
+ *
+ * Empty lines and lines starting with '#' are ignored.
+ */
+public class CommandScript {
+
+	private final List<String[]> lines;
+
+	private CommandScript(List<String[]> lines) {
+		this.lines = lines;
+	}
+
+	public static CommandScript read(String filename) throws IOException {
+		List<String[]> lines = new ArrayList<String[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(filename));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] words = line.split("\\s+", 3);
+				if (words.length < 2) {
+					throw new IOException(filename + ":" + lineNumber
+							+ ": missing worm index");
+				}
+				lines.add(words);
+			}
+		} finally {
+			reader.close();
+		}
+		return new CommandScript(lines);
+	}
+
+	/**
+	 * Number of commands in this script
+	 */
+	public int size() {
+		return lines.size();
+	}
+
+	/**
+	 * Create the commands of this script, for the given worms, without a
+	 * screen
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a command is unknown, or refers to a worm that does not
+	 *             exist
+	 */
+	public List<Command> createCommands(IFacade facade, List<Worm> worms)
+			throws IllegalArgumentException {
+		List<Command> result = new ArrayList<Command>(lines.size());
+		for (String[] words : lines) {
+			result.add(createCommand(facade, worms, words));
+		}
+		return result;
+	}
+
+	private static Command createCommand(IFacade facade, List<Worm> worms,
+			String[] words) throws IllegalArgumentException {
+		int index = Integer.parseInt(words[1]);
+		if (index < 0 || index >= worms.size()) {
+			throw new IllegalArgumentException("No worm with index " + index);
+		}
+		Worm worm = worms.get(index);
+		String command = words[0];
+		if ("move".equals(command)) {
+			return new Move(facade, worm, Integer.parseInt(argument(words)),
+					null);
+		} else if ("turn".equals(command)) {
+			return new Turn(facade, worm,
+					Double.parseDouble(argument(words)), null);
+		} else if ("jump".equals(command)) {
+			return new Jump(facade, worm, null);
+		} else if ("resize".equals(command)) {
+			return new Resize(facade, worm,
+					Double.parseDouble(argument(words)), null);
+		} else if ("rename".equals(command)) {
+			return new Rename(facade, worm, argument(words), null);
+		}
+		throw new IllegalArgumentException("Unknown command: " + command);
+	}
+
+	private static String argument(String[] words) {
+		if (words.length < 3) {
+			throw new IllegalArgumentException("Missing argument for "
+					+ words[0]);
+		}
+		return words[2];
+	}
+}
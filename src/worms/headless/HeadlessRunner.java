@@ -0,0 +1,257 @@
+package worms.headless;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import worms.gui.GUIConstants;
+import worms.gui.GameState;
+import worms.gui.GameStateFile;
+import worms.gui.game.commands.Command;
+import worms.gui.game.commands.CommandJournal;
+import worms.gui.game.commands.CommandMetrics;
+import worms.gui.game.commands.CommandProcessor;
+import worms.gui.game.commands.Jump;
+import worms.gui.game.commands.Move;
+import worms.gui.game.commands.OverflowPolicy;
+import worms.gui.game.commands.Resize;
+import worms.gui.game.commands.Turn;
+import worms.model.Facade;
+import worms.model.IFacade;
+import worms.model.Worm;
+
+/**
+ * Runs a game without a screen, as fast as possible, and reports how many
+ * simulation steps (ticks) and commands it processes per second.
+ *
+ * The commands are either read from a script (see CommandScript) or
+ * generated at random. Usage:
+ *
+ * <pre>
+ * java worms.headless.HeadlessRunner [-seed &lt;seed&gt;] [-worms &lt;nbWorms&gt;]
+ *     [-ticks &lt;nbTicks&gt;] [-commands &lt;nbCommandsPerTick&gt;]
+ *     [-script &lt;file&gt;] [-queue &lt;capacity&gt;]
+ *     [-overflow reject|drop-oldest|collapse-per-worm] [-record &lt;journal&gt;]
+ *     [-load &lt;file&gt;] [-save &lt;file&gt;]
+ * </pre>
+ *
+ * With -record, the commands are recorded in a CommandJournal, and the
+ * final state of the worms is printed, to be compared with a replay (see
+ * Replayer).
+ *
+ * With -load, the game is loaded from a saved game (see GameStateFile)
+ * instead of started with random worms; with -save, the game is saved after
+ * it has run. Both report how long that took.
+ */
+public class HeadlessRunner {
+
+	private final GameState gameState;
+	private final List<Worm> worms;
+	private final Random random;
+
+	private long nbTicks = 0;
+	private long nbCommands = 0;
+
+	public HeadlessRunner(IFacade facade, long randomSeed, int nbWorms) {
+		this(createGameState(facade, randomSeed, nbWorms));
+	}
+
+	/**
+	 * Create a runner for the given game, which has started (or was loaded)
+	 */
+	public HeadlessRunner(GameState gameState) {
+		this.gameState = gameState;
+		this.worms = new ArrayList<Worm>(gameState.getWorms());
+		this.random = new Random(gameState.getRandomSeed());
+	}
+
+	private static GameState createGameState(IFacade facade, long randomSeed,
+			int nbWorms) {
+		GameState gameState = new GameState(facade, randomSeed,
+				GUIConstants.DEFAULT_WINDOW_WIDTH,
+				GUIConstants.DEFAULT_WINDOW_HEIGHT);
+		gameState.startGame(nbWorms);
+		return gameState;
+	}
+
+	public GameState getGameState() {
+		return gameState;
+	}
+
+	public List<Worm> getWorms() {
+		return worms;
+	}
+
+	/**
+	 * Number of simulation steps taken so far
+	 */
+	public long getNbTicks() {
+		return nbTicks;
+	}
+
+	/**
+	 * Number of commands that have been enqueued so far
+	 */
+	public long getNbCommands() {
+		return nbCommands;
+	}
+
+	/**
+	 * Enqueue the given command, taking simulation steps while the game
+	 * state is saturated or cannot accept more commands
+	 */
+	public void enqueueCommand(Command command) {
+		while (gameState.isSaturated() || !gameState.enqueueCommand(command)) {
+			tick();
+		}
+		nbCommands++;
+	}
+
+	/**
+	 * Evolve the game state by a single simulation step
+	 */
+	public void tick() {
+		gameState.evolve(GUIConstants.TIME_STEP);
+		nbTicks++;
+	}
+
+	/**
+	 * Take simulation steps until all enqueued commands have finished, or
+	 * until the given number of steps have been taken
+	 */
+	public void runUntilIdle(long maxTicks) {
+		for (long i = 0; i < maxTicks && gameState.getNbPendingCommands() > 0; i++) {
+			tick();
+		}
+	}
+
+	/**
+	 * Take the given number of simulation steps, and enqueue the given number
+	 * of random commands before each of them
+	 */
+	public void runGenerated(long ticks, int commandsPerTick) {
+		IFacade facade = gameState.getFacade();
+		for (long i = 0; i < ticks; i++) {
+			for (int j = 0; j < commandsPerTick; j++) {
+				enqueueCommand(createRandomCommand(facade));
+			}
+			tick();
+		}
+	}
+
+	private Command createRandomCommand(IFacade facade) {
+		Worm worm = worms.get(random.nextInt(worms.size()));
+		switch (random.nextInt(4)) {
+		case 0:
+			return new Move(facade, worm, 1 + random.nextInt(3), null);
+		case 1:
+			return new Turn(facade, worm, (random.nextDouble() * 2 - 1)
+					* Math.PI, null);
+		case 2:
+			return new Jump(facade, worm, null);
+		default:
+			double factor = 1.0 + (random.nextBoolean() ? GUIConstants.RESIZE_FACTOR
+					: -GUIConstants.RESIZE_FACTOR);
+			return new Resize(facade, worm, factor, null);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		long seed = 3;
+		int nbWorms = 10;
+		long ticks = 100000;
+		int commandsPerTick = 1;
+		String script = null;
+		int capacity = CommandProcessor.DEFAULT_CAPACITY;
+		OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+		String journalFile = null;
+		String loadFile = null;
+		String saveFile = null;
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if ("-seed".equals(arg)) {
+				seed = Long.parseLong(args[++i]);
+			} else if ("-worms".equals(arg)) {
+				nbWorms = Integer.parseInt(args[++i]);
+			} else if ("-ticks".equals(arg)) {
+				ticks = Long.parseLong(args[++i]);
+			} else if ("-commands".equals(arg)) {
+				commandsPerTick = Integer.parseInt(args[++i]);
+			} else if ("-script".equals(arg)) {
+				script = args[++i];
+			} else if ("-queue".equals(arg)) {
+				capacity = Integer.parseInt(args[++i]);
+			} else if ("-overflow".equals(arg)) {
+				overflowPolicy = OverflowPolicy.parse(args[++i]);
+			} else if ("-record".equals(arg)) {
+				journalFile = args[++i];
+			} else if ("-load".equals(arg)) {
+				loadFile = args[++i];
+			} else if ("-save".equals(arg)) {
+				saveFile = args[++i];
+			} else {
+				System.err.println("Unknown option: " + arg);
+				System.exit(1);
+			}
+		}
+
+		HeadlessRunner runner;
+		if (loadFile != null) {
+			long start = System.nanoTime();
+			runner = new HeadlessRunner(GameStateFile.load(loadFile));
+			nbWorms = runner.getWorms().size();
+			System.out.printf("%d worms loaded from %s in %.1f ms%n",
+					nbWorms, loadFile, (System.nanoTime() - start) / 1e6);
+		} else {
+			runner = new HeadlessRunner(new Facade(), seed, nbWorms);
+		}
+		runner.getGameState().setCommandQueueCapacity(capacity,
+				overflowPolicy);
+		CommandJournal journal = null;
+		if (journalFile != null) {
+			journal = runner.getGameState().startJournal(journalFile);
+		}
+		long start = System.nanoTime();
+		if (script != null) {
+			IFacade facade = runner.getGameState().getFacade();
+			for (Command command : CommandScript.read(script).createCommands(
+					facade, runner.getWorms())) {
+				runner.enqueueCommand(command);
+			}
+			runner.runUntilIdle(ticks);
+		} else {
+			runner.runGenerated(ticks, commandsPerTick);
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("%d worms, %d ticks (%.1f worm-seconds), "
+				+ "%d commands (%d pending) in %.3f s%n", nbWorms,
+				runner.getNbTicks(), runner.getNbTicks()
+						* GUIConstants.TIME_STEP, runner.getNbCommands(),
+				runner.getGameState().getNbPendingCommands(), elapsed);
+		System.out.printf("%.0f ticks/s, %.0f commands/s%n",
+				runner.getNbTicks() / elapsed,
+				(runner.getNbCommands() - runner.getGameState()
+						.getNbPendingCommands()) / elapsed);
+		CommandMetrics metrics = runner.getGameState().getCommandMetrics();
+		System.out.printf("%d cancelled, %d dropped, max queue depth %d, "
+				+ "wait p50 %.3f ms, p99 %.3f ms%n", metrics.getNbCancelled(),
+				metrics.getNbDropped(), metrics.getMaxQueueDepth(),
+				metrics.getWaitTimes().getPercentile(50) / 1e6, metrics
+						.getWaitTimes().getPercentile(99) / 1e6);
+		if (journal != null) {
+			journal.close();
+			System.out.printf("%d commands recorded in %s (%d bytes)%n",
+					journal.getNbRecords(), journalFile, journal.getLength());
+			Replayer.printWorms(runner.getGameState());
+		}
+		if (saveFile != null) {
+			start = System.nanoTime();
+			GameStateFile.save(runner.getGameState(), saveFile);
+			System.out.printf("%d worms saved to %s in %.1f ms%n", nbWorms,
+					saveFile, (System.nanoTime() - start) / 1e6);
+		}
+	}
+}
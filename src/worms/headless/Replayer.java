@@ -0,0 +1,87 @@
+package worms.headless;
+
+import java.io.IOException;
+
+import worms.gui.GameState;
+import worms.gui.JournalPlayer;
+import worms.gui.game.commands.CommandMetrics;
+import worms.gui.game.commands.JournalReader;
+import worms.model.Facade;
+import worms.model.IFacade;
+import worms.model.Worm;
+
+/**
+ * Replays a game that was recorded in a CommandJournal, without a screen
+ * and as fast as possible (see JournalPlayer), and prints the final state of
+ * the worms.
+ *
+ * With -seek, it first jumps to the given simulation step, and reports how
+ * long that took. Usage:
+ *
+ * <pre>
+ * java worms.headless.Replayer [-seek &lt;step&gt;] &lt;journal&gt;
+ * </pre>
+ */
+public class Replayer {
+
+	public static void main(String[] args) throws IOException {
+		String journalFile = null;
+		long seekTarget = -1;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if ("-seek".equals(arg)) {
+				seekTarget = Long.parseLong(args[++i]);
+			} else if (journalFile == null && !arg.startsWith("-")) {
+				journalFile = arg;
+			} else {
+				System.err.println("Unknown option: " + arg);
+				System.exit(1);
+			}
+		}
+		if (journalFile == null) {
+			System.err.println("Usage: java worms.headless.Replayer "
+					+ "[-seek <step>] <journal>");
+			System.exit(1);
+		}
+
+		long start = System.nanoTime();
+		JournalReader journal = new JournalReader(journalFile);
+		JournalPlayer player = new JournalPlayer(new Facade(), journal);
+		System.out.printf("%d worms, %d steps, %d keyframes, opened in "
+				+ "%.1f ms%n", journal.getNbWorms(), journal.getLastTick(),
+				journal.getNbKeyframes(), (System.nanoTime() - start) / 1e6);
+		if (seekTarget >= 0) {
+			start = System.nanoTime();
+			player.seek(seekTarget);
+			System.out.printf("sought step %d in %.1f ms%n", seekTarget,
+					(System.nanoTime() - start) / 1e6);
+		}
+		start = System.nanoTime();
+		player.run();
+		double elapsed = (System.nanoTime() - start) / 1e6;
+
+		System.out.printf("replayed up to step %d in %.1f ms%n",
+				player.getTick(), elapsed);
+		CommandMetrics metrics = player.getGameState().getCommandMetrics();
+		System.out.printf("%d enqueued, %d coalesced, %d cancelled, "
+				+ "%d dropped%n", metrics.getNbEnqueued(),
+				metrics.getNbCoalesced(), metrics.getNbCancelled(),
+				metrics.getNbDropped());
+		printWorms(player.getGameState());
+	}
+
+	/**
+	 * Print the name, location, orientation, radius and action points of
+	 * every worm of the given game, one worm per line, so that the outcome of
+	 * a recorded game and its replay can be compared
+	 */
+	static void printWorms(GameState gameState) {
+		IFacade facade = gameState.getFacade();
+		for (Worm worm : gameState.getWorms()) {
+			System.out.printf("%s\t%.6f\t%.6f\t%.6f\t%.6f\t%d%n",
+					facade.getName(worm), facade.getX(worm), facade.getY(worm),
+					facade.getOrientation(worm), facade.getRadius(worm),
+					facade.getActionPoints(worm));
+		}
+	}
+}
@@ -1,8 +1,33 @@
 package worms.model;
+import java.util.BitSet;
+import java.util.Collection;
+
 import worms.model.IFacade;
 import worms.model.Worm;
 
 public class Facade implements IFacade {
+	/**
+	 * Creates a facade that stores the worms it creates in a new, empty population.
+	 */
+	public Facade() {
+		this(new WormPopulation());
+	}
+
+	/**
+	 * Creates a facade that stores the worms it creates in the given population.
+	 */
+	public Facade(WormPopulation population) {
+		this.population = population;
+		this.grid = new WormGrid(GRID_CELL_SIZE, population);
+	}
+
+	/**
+	 * Get the population in which the worms created by this facade are stored.
+	 */
+	public WormPopulation getPopulation() {
+		return population;
+	}
+
 	/**
 	 * Creates a worm with a given x-and y-position, direction, radius and name. 
 	 * Other values also get initialized.
@@ -10,7 +35,14 @@ public class Facade implements IFacade {
 	@Override
 	public Worm createWorm(double x, double y, double direction, double radius,
 			String name) {
-		return new Worm(x,y,direction,radius, name);
+		Worm worm;
+		try {
+			worm = population.createWorm(x, y, direction, radius, name);
+		} catch (IllegalArgumentException exc) {
+			throw new ModelException("not a valid worm");
+		}
+		grid.update(worm);
+		return worm;
 	}
 
 	/**
@@ -31,6 +63,7 @@ public class Facade implements IFacade {
 		} catch (IllegalArgumentException exc) {
 			throw new ModelException("not allowed to move");
 		}
+		grid.update(worm);
 	}
 
 	/**
@@ -59,6 +92,92 @@ public class Facade implements IFacade {
 		} catch (IllegalStateException exc) {
 			throw new ModelException("can't jump");
 		}
+		grid.update(worm);
+	}
+
+	/**
+	 * Checks whether a given worm can jump.
+	 */
+	@Override
+	public boolean canJump(Worm worm) {
+		return worm.canJump();
+	}
+
+	/**
+	 * Get the time it takes the given worm to jump, or NaN if it can't jump.
+	 */
+	@Override
+	public double findJumpTime(Worm worm) {
+		if (! worm.canJump())
+			return Double.NaN;
+		return worm.jumpTime();
+	}
+
+	/**
+	 * Get the trajectory of a jump of the given worm, or null if it can't jump.
+	 */
+	@Override
+	public JumpTrajectory findJumpTrajectory(Worm worm) {
+		if (! worm.canJump())
+			return null;
+		return worm.jumpTrajectory();
+	}
+
+	/**
+	 * Moves every given worm over the corresponding number of steps, if it can.
+	 * Bit i of the result is set if the i-th worm has moved.
+	 */
+	@Override
+	public BitSet moveAll(Worm[] worms, int[] nbSteps) {
+		if (worms.length != nbSteps.length)
+			throw new ModelException("every worm needs a number of steps");
+		BitSet moved = new BitSet(worms.length);
+		for (int i = 0; i < worms.length; i++) {
+			Worm worm = worms[i];
+			if (worm != null && worm.isValidStep(nbSteps[i])) {
+				worm.move(nbSteps[i]);
+				grid.update(worm);
+				moved.set(i);
+			}
+		}
+		return moved;
+	}
+
+	/**
+	 * Turns every given worm over the corresponding angle, if it can.
+	 * Bit i of the result is set if the i-th worm has turned.
+	 */
+	@Override
+	public BitSet turnAll(Worm[] worms, double[] angles) {
+		if (worms.length != angles.length)
+			throw new ModelException("every worm needs an angle");
+		BitSet turned = new BitSet(worms.length);
+		for (int i = 0; i < worms.length; i++) {
+			Worm worm = worms[i];
+			if (worm != null && worm.isValidTurn(angles[i])) {
+				worm.turn(angles[i]);
+				turned.set(i);
+			}
+		}
+		return turned;
+	}
+
+	/**
+	 * Makes every given worm jump, if it can.
+	 * Bit i of the result is set if the i-th worm has jumped.
+	 */
+	@Override
+	public BitSet jumpAll(Worm[] worms) {
+		BitSet jumped = new BitSet(worms.length);
+		for (int i = 0; i < worms.length; i++) {
+			Worm worm = worms[i];
+			if (worm != null && worm.canJump()) {
+				worm.jump();
+				grid.update(worm);
+				jumped.set(i);
+			}
+		}
+		return jumped;
 	}
 
 	/**
@@ -86,6 +205,18 @@ public class Facade implements IFacade {
 		}
 	}
 
+	/**
+	 * Get the trajectory of a jump of the given worm from its current position.
+	 */
+	@Override
+	public JumpTrajectory getJumpTrajectory(Worm worm) {
+		try {
+			return worm.jumpTrajectory();
+		} catch (IllegalStateException exc) {
+			throw new ModelException("can't jump");
+		}
+	}
+
 	/**
 	 * Get a worm's x-position.
 	 */
@@ -128,6 +259,7 @@ public class Facade implements IFacade {
 		} catch (IllegalArgumentException exc) {
 			throw new ModelException("not a valid radius");
 		}
+		grid.update(worm);
 	}
 
 	/**
@@ -181,5 +313,48 @@ public class Facade implements IFacade {
 	public double getMass(Worm worm) {
 		return worm.getMass();
 	}
-	
+
+	/**
+	 * Restore the location, direction, radius, name and actionpoints of a given worm.
+	 */
+	@Override
+	public void restoreWorm(Worm worm, double x, double y, double direction,
+			double radius, String name, int actionPoints) {
+		try {
+			worm.restore(x, y, direction, radius, name, actionPoints);
+		} catch (IllegalArgumentException exc) {
+			throw new ModelException("not a valid worm state");
+		}
+		grid.update(worm);
+	}
+
+	/**
+	 * Get the worm that contains the given position, or null if there is none.
+	 */
+	@Override
+	public Worm getWormAt(double x, double y) {
+		return grid.wormAt(x, y);
+	}
+
+	/**
+	 * Get the worms that overlap the circle with the given center and radius.
+	 */
+	@Override
+	public Collection<Worm> getWormsInCircle(double x, double y, double radius) {
+		return grid.wormsInCircle(x, y, radius);
+	}
+
+	/**
+	 * Get the worm closest to the given position, or null if there are no worms.
+	 */
+	@Override
+	public Worm getNearestWorm(double x, double y) {
+		return grid.nearestWorm(x, y);
+	}
+
+	// all worms of this facade share one population, so they don't each need their own arrays.
+	private final WormPopulation population;
+	// spatial index of the worms of this facade, updated whenever a worm moves or is resized.
+	private final WormGrid grid;
+	private static final double GRID_CELL_SIZE = 1.0;
 }
@@ -1,5 +1,8 @@
 package worms.model;
 
+import java.util.BitSet;
+import java.util.Collection;
+
 /**
  * Implement this interface to connect your code to the user interface.
  * 
@@ -90,6 +93,57 @@ public interface IFacade {
 	 */
 	void jump(Worm worm);
 
+	/**
+	 * Returns whether or not the given worm can jump.
+	 */
+	boolean canJump(Worm worm);
+
+	/**
+	 * Returns the total amount of time (in seconds) that a
+	 * jump of the given worm would take, or <code>Double.NaN</code>
+	 * if the given worm cannot jump.
+	 * 
+	 * Unlike <code>getJumpTime</code>, this method does not throw.
+	 */
+	double findJumpTime(Worm worm);
+
+	/**
+	 * Returns the trajectory of a jump of the given worm from its
+	 * current location, or <code>null</code> if the given worm cannot jump.
+	 * 
+	 * Unlike <code>getJumpTrajectory</code>, this method does not throw.
+	 */
+	JumpTrajectory findJumpTrajectory(Worm worm);
+
+	/**
+	 * Moves each of the given worms by the corresponding number of steps,
+	 * as far as that worm can move that number of steps.
+	 * 
+	 * @return A bitmap in which bit i is set if and only if
+	 *  worms[i] has moved nbSteps[i] steps.
+	 *  Worms that cannot move (or that are null) are left unchanged.
+	 */
+	BitSet moveAll(Worm[] worms, int[] nbSteps);
+
+	/**
+	 * Turns each of the given worms by the corresponding angle,
+	 * as far as that worm can turn by that angle.
+	 * 
+	 * @return A bitmap in which bit i is set if and only if
+	 *  worms[i] has turned by angles[i].
+	 *  Worms that cannot turn (or that are null) are left unchanged.
+	 */
+	BitSet turnAll(Worm[] worms, double[] angles);
+
+	/**
+	 * Makes each of the given worms jump, as far as that worm can jump.
+	 * 
+	 * @return A bitmap in which bit i is set if and only if
+	 *  worms[i] has jumped.
+	 *  Worms that cannot jump (or that are null) are left unchanged.
+	 */
+	BitSet jumpAll(Worm[] worms);
+
 	/**
 	 * Returns the total amount of time (in seconds) that a
 	 * jump of the given worm would take.
@@ -106,6 +160,13 @@ public interface IFacade {
 	 */
 	double[] getJumpStep(Worm worm, double t);
 
+	/**
+	 * Returns the trajectory of a jump of the given worm from its
+	 * current location.
+	 * The trajectory can be sampled repeatedly without recomputing the jump.
+	 */
+	JumpTrajectory getJumpTrajectory(Worm worm);
+
 	/**
 	 * Returns the x-coordinate of the current location of the given worm.
 	 */
@@ -161,4 +222,32 @@ public interface IFacade {
 	 */
 	double getMass(Worm worm);
 
+	/**
+	 * Puts the given worm at the given location, with the given orientation,
+	 * radius, name and number of action points (e.g., to restore a saved
+	 * game).
+	 */
+	void restoreWorm(Worm worm, double x, double y, double direction,
+			double radius, String name, int actionPoints);
+
+	/**
+	 * Returns the worm created by this facade whose body contains the given
+	 * location, or null if there is no such worm.
+	 * If several worms contain the location, the one whose center is closest
+	 * to it is returned.
+	 */
+	Worm getWormAt(double x, double y);
+
+	/**
+	 * Returns all worms created by this facade whose body overlaps the circle
+	 * with the given center and radius (in meter).
+	 */
+	Collection<Worm> getWormsInCircle(double x, double y, double radius);
+
+	/**
+	 * Returns the worm created by this facade whose center is closest to the
+	 * given location, or null if this facade has not created any worms.
+	 */
+	Worm getNearestWorm(double x, double y);
+
 }
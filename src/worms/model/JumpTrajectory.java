@@ -0,0 +1,138 @@
+package worms.model;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of jump trajectories, describing the path of a worm during a jump.
+ * 	A trajectory is computed once from the state of the worm at the start of the jump,
+ * 	afterwards positions on it can be sampled without recomputing the jump velocity
+ * 	and without creating new objects.
+ *
+ * @invar	The duration of the jump is never negative.
+ * 			| getDuration() >= 0
+ *
+ * @author 	Toon Stuyck
+ * 			Toon Van Deun
+ * 			Burgerlijk Ingenieur
+ * 			https://github.com/ToonVanDeun/PROJECT_OP
+ * @version 1.0
+ */
+@Value
+public class JumpTrajectory {
+	/**
+	 * Initialize a trajectory for a jump from the given position, with the given velocity and direction.
+	 * @param xpos
+	 * 			The x-position at which the jump starts.
+	 * @param ypos
+	 * 			The y-position at which the jump starts.
+	 * @param velocity
+	 * 			The initial velocity of the jump.
+	 * @param direction
+	 * 			The direction in which the jump starts.
+	 * @post	The duration of the jump is the time it takes to land at the starting height again.
+	 * 			| if (direction == PI/2)
+	 * 			|	new.getDuration() == 0
+	 * 			| else
+	 * 			|	new.getDuration() == distance / (velocity*cos(direction))
+	 * 			|	with distance == velocity^2*sin(2*direction)/G
+	 */
+	public JumpTrajectory(double xpos, double ypos, double velocity, double direction) {
+		this.xpos = xpos;
+		this.ypos = ypos;
+		this.xVelocity = velocity*Math.cos(direction);
+		this.yVelocity = velocity*Math.sin(direction);
+		this.duration = computeDuration(velocity, direction);
+	}
+
+	/**
+	 * Returns the duration of a jump with the given velocity and direction, without creating a trajectory.
+	 * @return	| result == new JumpTrajectory(0, 0, velocity, direction).getDuration()
+	 */
+	static double computeDuration(double velocity, double direction) {
+		if (direction == (Math.PI/2))
+			return 0;
+		return ((velocity*velocity*Math.sin(2*direction))/Worm.G)/(velocity*Math.cos(direction));
+	}
+
+	/**
+	 * Returns the x-position at which the jump starts.
+	 */
+	@Basic @Immutable
+	public double getXpos() {
+		return this.xpos;
+	}
+	/**
+	 * Returns the y-position at which the jump starts.
+	 */
+	@Basic @Immutable
+	public double getYpos() {
+		return this.ypos;
+	}
+	/**
+	 * Returns the time it takes to complete the jump.
+	 */
+	@Basic @Immutable
+	public double getDuration() {
+		return this.duration;
+	}
+
+	/**
+	 * Stores the position on the trajectory at the given time (after the jump started) in the given array.
+	 * @param timeAfterLaunch
+	 * 			The time after the jump started.
+	 * @param out
+	 * 			The array in which the position is stored.
+	 * @param offset
+	 * 			The index in the array at which the x-position is stored, the y-position is stored right after it.
+	 * @post	| out[offset] == getXpos() + vx*timeAfterLaunch
+	 * 			| out[offset+1] == getYpos() + vy*timeAfterLaunch - 0.5*G*timeAfterLaunch^2
+	 * @throws	IndexOutOfBoundsException
+	 * 			If the array has no room for both coordinates at the given offset.
+	 * 			| offset < 0 || offset+1 >= out.length
+	 */
+	public void sampleInto(double timeAfterLaunch, double[] out, int offset)
+			throws IndexOutOfBoundsException {
+		sampleInto(this.xpos, this.ypos, this.xVelocity, this.yVelocity, timeAfterLaunch, out, offset);
+	}
+	/**
+	 * Stores the position at the given time on the trajectory that starts at the given position
+	 * 	with the given velocities in the given array, without creating a trajectory.
+	 * @effect	| new JumpTrajectory(xpos, ypos, velocity, direction).sampleInto(timeAfterLaunch, out, offset)
+	 * 			| with xVelocity == velocity*cos(direction) and yVelocity == velocity*sin(direction)
+	 */
+	static void sampleInto(double xpos, double ypos, double xVelocity, double yVelocity,
+			double timeAfterLaunch, double[] out, int offset) throws IndexOutOfBoundsException {
+		out[offset] = (xVelocity*timeAfterLaunch)+xpos;
+		out[offset+1] = (yVelocity*timeAfterLaunch -
+				0.5*Worm.G*timeAfterLaunch*timeAfterLaunch)+ypos;
+	}
+	/**
+	 * Stores n positions on the trajectory, at the times t0, t0+dt, ..., t0+(n-1)*dt, in the given array.
+	 * @param t0
+	 * 			The time (after the jump started) of the first position.
+	 * @param dt
+	 * 			The time between two positions.
+	 * @param n
+	 * 			The number of positions.
+	 * @param out
+	 * 			The array in which the positions are stored, as consecutive x- and y-positions.
+	 * @effect	| for each i in 0..n-1: sampleInto(t0 + i*dt, out, 2*i)
+	 * @throws	IndexOutOfBoundsException
+	 * 			If the array has no room for all positions.
+	 * 			| out.length < 2*n
+	 */
+	public void sampleRange(double t0, double dt, int n, double[] out)
+			throws IndexOutOfBoundsException {
+		if (out.length < 2*n)
+			throw new IndexOutOfBoundsException();
+		for (int i = 0; i < n; i++)
+			sampleInto(t0 + i*dt, out, 2*i);
+	}
+
+	// variables
+	private final double xpos;
+	private final double ypos;
+	private final double xVelocity;
+	private final double yVelocity;
+	private final double duration;
+}
@@ -25,6 +25,8 @@ import be.kuleuven.cs.som.annotate.*;
 public class Worm {
 	/**
 	 * Initialize a worm with a x-and -position (meters), direction (radians), radius (meters) and a name.
+	 * 	The worm is stored in a small population that it shares with the next worms created this way
+	 * 	on the same thread, so it takes about as much memory as a worm with its own fields.
 	 * @param xpos
 	 * 			The X position of the worm.
 	 * @param ypos
@@ -64,12 +66,58 @@ public class Worm {
 	 * 			|new.getRadiusLowerBound() ==  0.25
 	 */
 	public Worm(double xpos, double ypos, double direction, double radius, String name){
+		this(getStandalonePopulation(), xpos, ypos, direction, radius, name);
+	}
+	/**
+	 * Initialize a worm whose state is stored in the given population.
+	 * 	The worm is a view on the next free slot of the population, 
+	 * 	the slot is only claimed when the worm was initialized successfully.
+	 * @param population
+	 * 			The population that stores the state of the worm.
+	 * @effect	The worm is initialized like a worm with the given values.
+	 * 			| this(xpos, ypos, direction, radius, name)
+	 * @post	The worm is the last worm of the given population.
+	 * 			| population.getWorm(population.size()-1) == new
+	 */
+	Worm(WormPopulation population, double xpos, double ypos, double direction, double radius, String name){
+		this.population = population;
+		this.index = population.reserveSlot();
 		this.setXpos(xpos);
 		this.setYpos(ypos);
 		this.setDirection(direction);
 		this.setRadius(radius);
 		this.setName(name);
-		this.setActionPoints(maxActionPoints);
+		this.setActionPoints(this.getMaxActionPoints());
+		population.attach(this);
+	}
+	
+	//population
+	/**
+	 * Returns the population for the next worm that is created without one, on the current thread.
+	 * 	A new population is started whenever the previous one is full, so it never grows,
+	 * 	and it can be collected once all its worms are unreachable.
+	 */
+	private static WormPopulation getStandalonePopulation(){
+		WormPopulation population = standalonePopulation.get();
+		if ((population == null) || (population.size() == population.getCapacity())) {
+			population = new WormPopulation(STANDALONE_POPULATION_CAPACITY);
+			standalonePopulation.set(population);
+		}
+		return population;
+	}
+	/**
+	 * Returns the population that stores the state of this worm.
+	 */
+	@Basic @Raw
+	public WormPopulation getPopulation(){
+		return this.population;
+	}
+	/**
+	 * Returns the index of this worm in its population.
+	 */
+	@Basic @Raw
+	public int getIndex(){
+		return this.index;
 	}
 	
 	//position (defensive)
@@ -78,7 +126,7 @@ public class Worm {
 	 */
 	@Basic @Raw
 	public double getXpos(){
-		return this.xpos;
+		return this.population.x[this.index];
 	}
 	/**
 	 * Sets the x-position of the worm.
@@ -94,14 +142,14 @@ public class Worm {
 	private void setXpos(double xpos) throws IllegalArgumentException{
 		if (! isValidPos(xpos))
 			throw new IllegalArgumentException();
-		this.xpos = xpos;
+		this.population.x[this.index] = xpos;
 	}
 	/**
 	 * Returns the y-position of the worm.
 	 */
 	@Basic @Raw
 	public double getYpos(){
-		return this.ypos;
+		return this.population.y[this.index];
 	}
 	/**
 	 * Sets the y-position of the worm.
@@ -117,7 +165,7 @@ public class Worm {
 	private void setYpos(double ypos) throws IllegalArgumentException{
 		if (! isValidPos(ypos))
 			throw new IllegalArgumentException();
-		this.ypos = ypos;
+		this.population.y[this.index] = ypos;
 	}
 	/**
 	 * Checks whether the given position is a valid position.
@@ -140,7 +188,7 @@ public class Worm {
 	 */
 	@Basic @Raw
 	public double getDirection(){
-		return this.direction;
+		return this.population.direction[this.index];
 	}
 	/**
 	 * Sets the direction of the worm between 0 and 2*Pi.
@@ -158,11 +206,16 @@ public class Worm {
 	@Raw
 	private void setDirection(double direction){
 		assert (isValidDirection(direction));
+		// the remainder is slow to compute, and most directions are already in range.
+		if ((direction >= 0) && (direction < 2*Math.PI)) {
+			this.population.direction[this.index] = direction;
+			return;
+		}
 		double newDirection = (direction % (2*Math.PI));
 		if (newDirection < 0) 
-			this.direction = (newDirection+(2*Math.PI));
+			this.population.direction[this.index] = (newDirection+(2*Math.PI));
 		else
-			this.direction = newDirection;
+			this.population.direction[this.index] = newDirection;
 	}
 	/**
 	 * Checks whether the given direction is a valid direction.
@@ -183,7 +236,7 @@ public class Worm {
 	 */
 	@Basic
 	public double getRadius(){
-		return this.radius;
+		return this.population.radius[this.index];
 	}	
 	/**
 	 * The method sets the radius of the worm to the given radius if it's a valid value.
@@ -200,8 +253,8 @@ public class Worm {
 	public void setRadius(double radius) throws IllegalArgumentException{
 		if ( ! isValidRadius(radius))
 			throw new IllegalArgumentException();
-		this.radius = radius;
-		this.setMass(this.radius);
+		this.population.radius[this.index] = radius;
+		this.setMass(radius);
 	}
 	/**
 	 * Checks whether a given radius is a valid radius.
@@ -237,7 +290,7 @@ public class Worm {
 	 */
 	@Basic @Raw
 	public double getMass(){
-		return this.mass;
+		return this.population.mass[this.index];
 	}
 	/**
 	 * The method sets the mass of the worm.
@@ -257,7 +310,7 @@ public class Worm {
 	private void setMass(double radius) throws IllegalArgumentException{
 		if (! isValidRadius(radius))
 			throw new IllegalArgumentException();
-		this.mass = DENSITY*((4.0/3.0)*Math.PI*Math.pow(radius, 3));
+		this.population.mass[this.index] = DENSITY*((4.0/3.0)*Math.PI*Math.pow(radius, 3));
 		this.setMaxActionPoints();
 		this.setActionPoints(this.getActionPoints());
 	}
@@ -268,7 +321,7 @@ public class Worm {
 	 */
 	@Basic @Raw
 	public String getName(){
-		return this.name;
+		return this.population.names[this.index];
 	}
 	/**
 	 * Sets the name of the worm to a given name if the given name is a valid name.
@@ -284,7 +337,7 @@ public class Worm {
 	public void setName(String name) throws IllegalArgumentException{
 		if (! isValidName(name))
 			throw new IllegalArgumentException();
-		this.name = name;
+		this.population.names[this.index] = name;
 	}
 	/**
 	 * Checks whether a given name is a valid name.
@@ -297,11 +350,32 @@ public class Worm {
 	 */
 	@Raw
 	public static boolean isValidName(String name){
-	    String regex = "^[A-Z]{1}[a-zA-Z \"\']{1,}$";
-	    Pattern pattern = Pattern.compile(regex);
-	    Matcher matcher = pattern.matcher(name);
+		// the pattern is only needed for the names that the plain check doesn't accept.
+		if (isPlainValidName(name))
+			return true;
+	    Matcher matcher = NAME_PATTERN.matcher(name);
 	    return matcher.find();
 	}
+	/**
+	 * Checks whether the given name consists of a capital followed by at least one letter, space or quote,
+	 * 	without the pattern, which is much slower for the names of many worms.
+	 * @return	| if (result) then isValidName(name)
+	 */
+	@Raw
+	private static boolean isPlainValidName(String name){
+		int length = name.length();
+		if (length < 2)
+			return false;
+		char first = name.charAt(0);
+		if (first < 'A' || first > 'Z')
+			return false;
+		for (int i = 1; i < length; i++) {
+			char c = name.charAt(i);
+			if (! ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == ' ' || c == '"' || c == '\''))
+				return false;
+		}
+		return true;
+	}
 	
 	//actionpoints (total)
 	/**
@@ -309,7 +383,7 @@ public class Worm {
 	 */
 	@Basic
 	public int getMaxActionPoints(){
-		return this.maxActionPoints;
+		return this.population.maxActionPoints[this.index];
 	}
 	/**
 	 * Set the maximal amount of action points of this worm.
@@ -328,16 +402,16 @@ public class Worm {
 	private void setMaxActionPoints(){
 		
 		if (this.getMass() < Integer.MAX_VALUE)
-			this.maxActionPoints = (int) Math.round(this.getMass());
+			this.population.maxActionPoints[this.index] = (int) Math.round(this.getMass());
 		else 
-			this.maxActionPoints =  Integer.MAX_VALUE;
+			this.population.maxActionPoints[this.index] =  Integer.MAX_VALUE;
 	}
 	/**
 	 * Return the current amount of action points for this worm.
 	 */
 	@Basic 
 	public int getActionPoints(){
-		return this.actionPoints;
+		return this.population.actionPoints[this.index];
 	}
 	/**
 	 * Set a new amount of action points for this worm.
@@ -351,11 +425,52 @@ public class Worm {
 	 */
 	private void setActionPoints(int actionPoints){
 		if (actionPoints >= (this.getMaxActionPoints()))
-			this.actionPoints = this.getMaxActionPoints();
+			this.population.actionPoints[this.index] = this.getMaxActionPoints();
 		else if (actionPoints <0)
-			this.actionPoints = 0;
+			this.population.actionPoints[this.index] = 0;
 		else 
-			this.actionPoints = actionPoints;
+			this.population.actionPoints[this.index] = actionPoints;
+	}
+	
+	//restore (defensive)
+	/**
+	 * Restores the state of this worm to the given values, for example those of a saved game.
+	 * @param xpos
+	 * 			The new x-position of the worm.
+	 * @param ypos
+	 * 			The new y-position of the worm.
+	 * @param direction
+	 * 			The new direction of the worm.
+	 * @param radius
+	 * 			The new radius of the worm.
+	 * @param name
+	 * 			The new name of the worm.
+	 * @param actionPoints
+	 * 			The new amount of action points of the worm.
+	 * @post	The x- and y-position, radius and name are set to the given values.
+	 * 			|new.getXpos() == xpos && new.getYpos() == ypos
+	 * 			|new.getRadius() == radius && new.getName() == name
+	 * @post	The direction is set to the given direction modulo (2*Pi).
+	 * 			|new.getDirection() == direction % (2*Pi) (between 0 and 2*Pi)
+	 * @post	The action points are set to the given amount, limited to the maximum
+	 * 			amount of action points for the new radius.
+	 * 			|new.getActionPoints() == min(max(actionPoints, 0), new.getMaxActionPoints())
+	 * @throws	IllegalArgumentException
+	 * 			If any of the given values isn't valid, in which case the worm isn't changed.
+	 * 			| ! isValidPos(xpos) || ! isValidPos(ypos) || ! isValidDirection(direction)
+	 * 			|	|| ! isValidRadius(radius) || ! isValidName(name)
+	 */
+	public void restore(double xpos, double ypos, double direction, double radius, 
+			String name, int actionPoints) throws IllegalArgumentException {
+		if (! isValidPos(xpos) || ! isValidPos(ypos) || ! isValidDirection(direction)
+				|| ! isValidRadius(radius) || ! isValidName(name))
+			throw new IllegalArgumentException();
+		this.setXpos(xpos);
+		this.setYpos(ypos);
+		this.setDirection(direction);
+		this.setRadius(radius);
+		this.setName(name);
+		this.setActionPoints(actionPoints);
 	}
 	
 	//move (defensive)
@@ -493,56 +608,69 @@ public class Worm {
 		double distance = (Math.pow(this.jumpVelocity(), 2)*Math.sin(2*this.getDirection()))/G;
 		return distance;	
 	}
+	/**
+	 * Returns the trajectory of a jump of this worm from its current position.
+	 * @return	The trajectory of a jump with the current jump velocity in the current direction.
+	 * 			| result == new JumpTrajectory(getXpos(), getYpos(), jumpVelocity(), getDirection())
+	 * @throws	IllegalStateException
+	 * 			If the worm can't jump the exception is thrown.
+	 * 			| ! canJump()
+	 */
+	public JumpTrajectory jumpTrajectory() throws IllegalStateException {
+		if (! this.canJump())
+			throw new IllegalStateException();
+		return new JumpTrajectory(this.getXpos(), this.getYpos(), this.jumpVelocity(), this.getDirection());
+	}
 	/**
 	 * Returns the time it takes to worm to jump (to his new position).
+	 * 	The time is computed without creating a trajectory, since it is asked for every frame of a jump.
+	 * @return	| result == jumpTrajectory().getDuration()
 	 * @throws	IllegalStateException
 	 * 			If the worm can't jump the exception is thrown.
 	 * 			| ! canJump()
 	 */
 	@Basic
 	public double jumpTime() throws IllegalStateException{
-		double time = 0;
-		if (!this.canJump())
+		if (! this.canJump())
 			throw new IllegalStateException();
-		if (this.getDirection() == (Math.PI/2))
-			time = 0;
-		else
-			time = this.jumpDistance()/(this.jumpVelocity()*Math.cos(this.getDirection()));
-		return time;
+		return JumpTrajectory.computeDuration(this.jumpVelocity(), this.getDirection());
 	}
 	/**
 	 * Returns the worms position during a jump on a given time (after the jump started).
 	 * @param timeAfterLaunch
 	 * 			The time after the jump started
+	 * @effect	| jumpTrajectory().sampleInto(timeAfterLaunch, result, 0)
 	 * @throws	IllegalStateException
 	 * 			If the worm can't jump the exception is thrown.
 	 * 			| ! canJump()
 	 */
 	@Basic
 	public double[] jumpStep(double timeAfterLaunch) throws IllegalStateException {
-		double[] step;
-        step = new double[2];
-        if (! this.canJump())
-        	throw new IllegalStateException();
-        step[0] = ((this.jumpVelocity()*Math.cos(this.getDirection())*timeAfterLaunch)+this.getXpos());   
-        step[1] = (this.jumpVelocity()*Math.sin(this.getDirection())*timeAfterLaunch - 
-        		0.5*G*Math.pow(timeAfterLaunch, 2))+this.getYpos();
+		if (! this.canJump())
+			throw new IllegalStateException();
+		double velocity = this.jumpVelocity();
+		double direction = this.getDirection();
+		double[] step = new double[2];
+		JumpTrajectory.sampleInto(this.getXpos(), this.getYpos(), velocity*Math.cos(direction),
+				velocity*Math.sin(direction), timeAfterLaunch, step, 0);
 		return step;
 	}
 	
 	// variables
-	private double xpos;
-	private double ypos;
-	private double direction;
-	private double radius;
+	// the state of the worm is stored in the slot with the given index of its population.
+	private final WormPopulation population;
+	private final int index;
+	// populations are not thread-safe, so every thread fills its own.
+	private static final ThreadLocal<WormPopulation> standalonePopulation = new ThreadLocal<WormPopulation>();
+	private static final int STANDALONE_POPULATION_CAPACITY = 64;
 	private static double radiusLowerBound = 0.25;
-	private double mass;
-	private int maxActionPoints;
-	private int actionPoints;
-	private String name;
 	//constants
 	private static final int DENSITY = 1062;
-	private static final double G = 9.80665;
+	/**
+	 * The pattern that valid names match, compiled only once since the name of every new worm is checked.
+	 */
+	private static final Pattern NAME_PATTERN = Pattern.compile("^[A-Z]{1}[a-zA-Z \"\']{1,}$");
+	static final double G = 9.80665;
 	
 
 }
@@ -0,0 +1,251 @@
+package worms.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of uniform grids that index worms on their position, for point and circle queries.
+ * 	Every worm is kept in the cell that contains its center. Queries look at the cells
+ * 	within the query range, extended with the largest radius of the indexed worms.
+ * 	The grid doesn't observe the worms, it has to be updated whenever a worm changes
+ * 	its position or radius. The cells of the worms of a given population are kept in
+ * 	an array indexed like that population, those of other worms in a map.
+ *
+ * @invar	The size of a cell is a positive number.
+ * 			| getCellSize() > 0
+ *
+ * @author 	Toon Stuyck
+ * 			Toon Van Deun
+ * 			Burgerlijk Ingenieur
+ * 			https://github.com/ToonVanDeun/PROJECT_OP
+ * @version 1.0
+ */
+class WormGrid {
+	/**
+	 * Initialize an empty grid with cells of the given size, for worms that are mostly
+	 * 	stored in the given population.
+	 * @param cellSize
+	 * 			The width and height of a cell, in meters.
+	 * @param population
+	 * 			The population of the worms that are indexed without a map.
+	 * @throws	IllegalArgumentException
+	 * 			| ! (cellSize > 0)
+	 */
+	WormGrid(double cellSize, WormPopulation population) throws IllegalArgumentException {
+		if (! (cellSize > 0))
+			throw new IllegalArgumentException();
+		this.cellSize = cellSize;
+		this.population = population;
+	}
+
+	/**
+	 * Returns the width and height of a cell, in meters.
+	 */
+	@Basic @Immutable
+	double getCellSize() {
+		return this.cellSize;
+	}
+
+	//updates
+	/**
+	 * Puts the given worm in the cell of its current position,
+	 * 	whether or not it was already indexed by this grid.
+	 * @param worm
+	 * 			The worm that was created, moved or resized.
+	 */
+	void update(Worm worm) {
+		this.maxRadius = Math.max(this.maxRadius, worm.getRadius());
+		int column = toCell(worm.getXpos());
+		int row = toCell(worm.getYpos());
+		long key = toKey(column, row);
+		Cell oldCell = getCell(worm);
+		if (oldCell != null) {
+			if (oldCell.key.longValue() == key)
+				return;
+			oldCell.remove(worm);
+			if (oldCell.isEmpty())
+				this.cells.remove(oldCell.key);
+		}
+		Cell cell = this.cells.get(key);
+		if (cell == null) {
+			cell = new Cell(key);
+			this.cells.put(cell.key, cell);
+		}
+		cell.add(worm);
+		setCell(worm, cell);
+		this.minColumn = Math.min(this.minColumn, column);
+		this.maxColumn = Math.max(this.maxColumn, column);
+		this.minRow = Math.min(this.minRow, row);
+		this.maxRow = Math.max(this.maxRow, row);
+	}
+
+	//queries
+	/**
+	 * Returns the worm that contains the given position.
+	 * 	If several worms contain it, the one with its center closest to the position is returned.
+	 * @return	null if no worm contains the given position.
+	 */
+	Worm wormAt(double x, double y) {
+		Worm result = null;
+		double best = Double.POSITIVE_INFINITY;
+		for (Worm worm : wormsInCircle(x, y, 0)) {
+			double distance = distance(worm, x, y);
+			if (distance < best) {
+				best = distance;
+				result = worm;
+			}
+		}
+		return result;
+	}
+	/**
+	 * Returns all worms that overlap the circle with the given center and radius.
+	 * 	| for each worm in result: distance(worm, x, y) <= radius + worm.getRadius()
+	 */
+	List<Worm> wormsInCircle(double x, double y, double radius) {
+		List<Worm> result = new ArrayList<Worm>();
+		double range = radius + this.maxRadius;
+		long fromColumn = Math.max(toCell(x - range), this.minColumn);
+		long toColumn = Math.min(toCell(x + range), this.maxColumn);
+		long fromRow = Math.max(toCell(y - range), this.minRow);
+		long toRow = Math.min(toCell(y + range), this.maxRow);
+		if (fromColumn > toColumn || fromRow > toRow)
+			return result;
+		if (! fitsInCells(toColumn - fromColumn + 1, toRow - fromRow + 1)) {
+			// fewer occupied cells than cells in range
+			for (List<Worm> cell : this.cells.values())
+				addOverlapping(cell, x, y, radius, result);
+		} else {
+			for (long column = fromColumn; column <= toColumn; column++)
+				for (long row = fromRow; row <= toRow; row++)
+					addOverlapping(this.cells.get(toKey((int) column, (int) row)), x, y, radius, result);
+		}
+		return result;
+	}
+	/**
+	 * Returns the worm with its center closest to the given position.
+	 * @return	null if the grid contains no worms.
+	 */
+	Worm nearestWorm(double x, double y) {
+		if (this.cells.isEmpty())
+			return null;
+		long column = toCell(x);
+		long row = toCell(y);
+		long maxRing = Math.max(Math.max(Math.abs(column - this.minColumn), Math.abs(this.maxColumn - column)),
+				Math.max(Math.abs(row - this.minRow), Math.abs(this.maxRow - row)));
+		Worm result = null;
+		double best = Double.POSITIVE_INFINITY;
+		// every position outside ring k lies at least k cells away from (x, y)
+		for (long ring = 0; ring <= maxRing && best > (ring - 1) * this.cellSize; ring++) {
+			if (! fitsInCells(2*ring + 1, 2*ring + 1)) {
+				// fewer occupied cells than cells left to search
+				for (List<Worm> cell : this.cells.values()) {
+					for (Worm worm : cell) {
+						double distance = distance(worm, x, y);
+						if (distance < best) {
+							best = distance;
+							result = worm;
+						}
+					}
+				}
+				return result;
+			}
+			for (long c = column - ring; c <= column + ring; c++) {
+				for (long r = row - ring; r <= row + ring; r++) {
+					if (Math.abs(c - column) != ring && Math.abs(r - row) != ring)
+						continue;
+					List<Worm> cell = this.cells.get(toKey((int) c, (int) r));
+					if (cell == null)
+						continue;
+					for (Worm worm : cell) {
+						double distance = distance(worm, x, y);
+						if (distance < best) {
+							best = distance;
+							result = worm;
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	//helpers
+	/**
+	 * Checks whether a block of cells with the given number of columns and rows
+	 * 	has at most as many cells as there are occupied cells.
+	 * 	Each side is compared first, so that the product can't overflow.
+	 */
+	private boolean fitsInCells(long nbColumns, long nbRows) {
+		long nbCells = this.cells.size();
+		return (nbColumns <= nbCells) && (nbRows <= nbCells) && (nbColumns * nbRows <= nbCells);
+	}
+	private Cell getCell(Worm worm) {
+		if (worm.getPopulation() != this.population)
+			return this.cellOfOtherWorm.get(worm);
+		int index = worm.getIndex();
+		return (index < this.cellOfIndex.length) ? this.cellOfIndex[index] : null;
+	}
+	private void setCell(Worm worm, Cell cell) {
+		if (worm.getPopulation() != this.population) {
+			this.cellOfOtherWorm.put(worm, cell);
+			return;
+		}
+		int index = worm.getIndex();
+		if (index >= this.cellOfIndex.length)
+			// grows along with the population, which is usually large enough already.
+			this.cellOfIndex = Arrays.copyOf(this.cellOfIndex,
+					Math.max(index + 1, this.population.getCapacity()));
+		this.cellOfIndex[index] = cell;
+	}
+	private void addOverlapping(List<Worm> cell, double x, double y, double radius, List<Worm> result) {
+		if (cell == null)
+			return;
+		for (Worm worm : cell)
+			if (distance(worm, x, y) <= radius + worm.getRadius())
+				result.add(worm);
+	}
+	private static double distance(Worm worm, double x, double y) {
+		double dx = worm.getXpos() - x;
+		double dy = worm.getYpos() - y;
+		return Math.sqrt(dx*dx + dy*dy);
+	}
+	private int toCell(double pos) {
+		return (int) Math.floor(pos / this.cellSize);
+	}
+	// the hash code of a Long is the xor of its halves, which would be the same for every cell
+	// on a diagonal; multiplying by an odd constant mixes the bits and keeps the keys unique.
+	private static long toKey(int column, int row) {
+		return ((((long) column) << 32) | (row & 0xffffffffL)) * 0x9E3779B97F4A7C15L;
+	}
+
+	// a cell knows its own key, so worms refer to their cell instead of each holding a boxed key.
+	@SuppressWarnings("serial")
+	private static class Cell extends ArrayList<Worm> {
+		private Cell(long key) {
+			super(2);
+			this.key = key;
+		}
+		private final Long key;
+	}
+
+	// variables
+	private final double cellSize;
+	private final Map<Long, Cell> cells = new HashMap<Long, Cell>();
+	private final WormPopulation population;
+	// the cell of the worm at every index of the population, null if that worm isn't indexed.
+	private Cell[] cellOfIndex = new Cell[0];
+	private final Map<Worm, Cell> cellOfOtherWorm = new IdentityHashMap<Worm, Cell>();
+	// largest radius of any worm that was ever indexed, the grid never shrinks it.
+	private double maxRadius = 0;
+	// bounds of all cells that were ever occupied.
+	private int minColumn = Integer.MAX_VALUE;
+	private int maxColumn = Integer.MIN_VALUE;
+	private int minRow = Integer.MAX_VALUE;
+	private int maxRow = Integer.MIN_VALUE;
+}
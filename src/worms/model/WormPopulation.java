@@ -0,0 +1,213 @@
+package worms.model;
+
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of populations that store the state of many worms in parallel arrays.
+ * 	Every worm of a population is a view on one slot (index) of these arrays,
+ * 	so scans over all worms of a population don't have to visit a separate object per worm.
+ *
+ * @invar	The number of worms is never larger than the capacity of the population.
+ * 			| size() <= getCapacity()
+ * @invar	Every worm of the population is a view on its own slot.
+ * 			| for each i in 0..size()-1: getWorm(i).getIndex() == i
+ *
+ * @author 	Toon Stuyck
+ * 			Toon Van Deun
+ * 			Burgerlijk Ingenieur
+ * 			https://github.com/ToonVanDeun/PROJECT_OP
+ * @version 1.0
+ */
+public class WormPopulation {
+	/**
+	 * Initialize an empty population with a default initial capacity.
+	 * @effect	| this(DEFAULT_CAPACITY)
+	 */
+	public WormPopulation() {
+		this(DEFAULT_CAPACITY);
+	}
+	/**
+	 * Initialize an empty population with the given initial capacity.
+	 * @param capacity
+	 * 			The number of worms that can be stored before the arrays have to grow.
+	 * @post	The population contains no worms.
+	 * 			| new.size() == 0
+	 * @throws	IllegalArgumentException
+	 * 			If the given capacity is negative.
+	 * 			| capacity < 0
+	 */
+	public WormPopulation(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException();
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.direction = new double[capacity];
+		this.radius = new double[capacity];
+		this.mass = new double[capacity];
+		this.actionPoints = new int[capacity];
+		this.maxActionPoints = new int[capacity];
+		this.names = new String[capacity];
+		this.worms = new Worm[capacity];
+	}
+
+	//worms
+	/**
+	 * Creates a new worm in this population with the given x-and y-position, direction, radius and name.
+	 * @return	The new worm, which is the last worm of this population.
+	 * 			| result == new.getWorm(new.size()-1)
+	 * @throws	IllegalArgumentException
+	 * 			If the worm can't be initialized with the given values.
+	 * 			In this case the population isn't changed.
+	 */
+	public Worm createWorm(double x, double y, double direction, double radius, String name)
+			throws IllegalArgumentException {
+		return new Worm(this, x, y, direction, radius, name);
+	}
+	/**
+	 * Returns the number of worms in this population.
+	 */
+	@Basic
+	public int size() {
+		return this.size;
+	}
+	/**
+	 * Returns the number of worms this population can store before its arrays have to grow.
+	 */
+	@Basic
+	public int getCapacity() {
+		return this.worms.length;
+	}
+	/**
+	 * Returns the worm at the given index.
+	 * @throws	IndexOutOfBoundsException
+	 * 			| index < 0 || index >= size()
+	 */
+	public Worm getWorm(int index) throws IndexOutOfBoundsException {
+		checkIndex(index);
+		return this.worms[index];
+	}
+	/**
+	 * Returns the index of the slot that the next worm will use,
+	 * 	after making sure the arrays are large enough to hold it.
+	 * 	The slot is cleared, the size of the population doesn't change.
+	 */
+	int reserveSlot() {
+		if (this.size == getCapacity())
+			grow();
+		int index = this.size;
+		this.x[index] = 0;
+		this.y[index] = 0;
+		this.direction[index] = 0;
+		this.radius[index] = 0;
+		this.mass[index] = 0;
+		this.actionPoints[index] = 0;
+		this.maxActionPoints[index] = 0;
+		this.names[index] = null;
+		return index;
+	}
+	/**
+	 * Adds the given worm, which was initialized on the reserved slot, to this population.
+	 * @post	| new.getWorm(worm.getIndex()) == worm
+	 * @post	| new.size() == worm.getIndex() + 1
+	 */
+	void attach(Worm worm) {
+		assert worm.getPopulation() == this && worm.getIndex() == this.size;
+		this.worms[worm.getIndex()] = worm;
+		this.size++;
+	}
+	/**
+	 * Grows all arrays to twice their capacity (and at least to one slot).
+	 */
+	private void grow() {
+		int capacity = Math.max(1, 2 * getCapacity());
+		this.x = Arrays.copyOf(this.x, capacity);
+		this.y = Arrays.copyOf(this.y, capacity);
+		this.direction = Arrays.copyOf(this.direction, capacity);
+		this.radius = Arrays.copyOf(this.radius, capacity);
+		this.mass = Arrays.copyOf(this.mass, capacity);
+		this.actionPoints = Arrays.copyOf(this.actionPoints, capacity);
+		this.maxActionPoints = Arrays.copyOf(this.maxActionPoints, capacity);
+		this.names = Arrays.copyOf(this.names, capacity);
+		this.worms = Arrays.copyOf(this.worms, capacity);
+	}
+	private void checkIndex(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + this.size);
+	}
+
+	//state (read-only, without going through the worm views)
+	/**
+	 * Returns the x-position of the worm at the given index.
+	 */
+	public double getX(int index) {
+		checkIndex(index);
+		return this.x[index];
+	}
+	/**
+	 * Returns the y-position of the worm at the given index.
+	 */
+	public double getY(int index) {
+		checkIndex(index);
+		return this.y[index];
+	}
+	/**
+	 * Returns the direction of the worm at the given index.
+	 */
+	public double getDirection(int index) {
+		checkIndex(index);
+		return this.direction[index];
+	}
+	/**
+	 * Returns the radius of the worm at the given index.
+	 */
+	public double getRadius(int index) {
+		checkIndex(index);
+		return this.radius[index];
+	}
+	/**
+	 * Returns the mass of the worm at the given index.
+	 */
+	public double getMass(int index) {
+		checkIndex(index);
+		return this.mass[index];
+	}
+	/**
+	 * Returns the action points of the worm at the given index.
+	 */
+	public int getActionPoints(int index) {
+		checkIndex(index);
+		return this.actionPoints[index];
+	}
+	/**
+	 * Returns the maximum action points of the worm at the given index.
+	 */
+	public int getMaxActionPoints(int index) {
+		checkIndex(index);
+		return this.maxActionPoints[index];
+	}
+	/**
+	 * Returns the name of the worm at the given index.
+	 */
+	public String getName(int index) {
+		checkIndex(index);
+		return this.names[index];
+	}
+
+	// variables
+	// the state of the worm with index i is stored in slot i of each array.
+	// only the worm views (and the population itself) write into these arrays.
+	double[] x;
+	double[] y;
+	double[] direction;
+	double[] radius;
+	double[] mass;
+	int[] actionPoints;
+	int[] maxActionPoints;
+	String[] names;
+	private Worm[] worms;
+	private int size = 0;
+	//constants
+	private static final int DEFAULT_CAPACITY = 16;
+}
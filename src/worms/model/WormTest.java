@@ -255,4 +255,18 @@ public class WormTest {
 		worm_jump.jump();
 		assert worm_jump.canJump()==false;
 	}
+	@Test
+	public void test_jumpTrajectory_valid() {
+		worm_jump.turn((3.0/4.0)*Math.PI);
+		JumpTrajectory trajectory = worm_jump.jumpTrajectory();
+		assertEquals(trajectory.getDuration(), worm_jump.jumpTime(), 1e-9);
+		double[] samples = new double[6];
+		trajectory.sampleRange(0, 0.25, 3, samples);
+		assertEquals(samples[4], worm_jump.jumpStep(0.5)[0], 1e-9);
+		assertEquals(samples[5], worm_jump.jumpStep(0.5)[1], 1e-9);
+	}
+	@Test(expected = IllegalStateException.class)
+	public void test_jumpTrajectory_fails() {
+		worm_jump.jumpTrajectory();
+	}
 }